@@ -0,0 +1,272 @@
+package org.jenkinsci.main.modules.cli.auth.ssh;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Maps {@link KeyFingerprint}s of authorized keys to the IDs of the users who registered them,
+ * so that {@link UserPropertyImpl#findUser(PublicKey)} does not need to load and scan every user.
+ *
+ * <p>
+ * The index is built on first use and then kept current by listening to user saves and deletions.
+ * Since {@link UserPropertyImpl#authorizedKeys} can be modified without saving the user, every hit is
+ * verified against the actual property before it is returned.
+ *
+ * <p>
+ * The index is also persisted in {@code JENKINS_HOME}, so that after a restart it can be loaded without loading
+ * every user. If the persisted copy is missing, stale or corrupt, it is rebuilt in the background.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public final class AuthorizedKeysIndex extends SaveableListener {
+    private static final String[] NO_USERS = new String[0];
+
+    /**
+     * User IDs sharing a fingerprint, kept sorted so that lookups are deterministic.
+     * Almost always a single element.
+     */
+    private final Map<KeyFingerprint, String[]> usersByFingerprint = new ConcurrentHashMap<>();
+
+    /**
+     * Reverse mapping used to retract the fingerprints a user no longer has.
+     */
+    private final Map<String, Set<KeyFingerprint>> fingerprintsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Delay in seconds used to coalesce several user saves into a single write of the index file.
+     */
+    private static final long SAVE_DELAY = SystemProperties.getLong(AuthorizedKeysIndex.class.getName() + ".saveDelay", 5L);
+
+    private volatile boolean built;
+
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    @NonNull
+    public static AuthorizedKeysIndex get() {
+        return ExtensionList.lookupSingleton(AuthorizedKeysIndex.class);
+    }
+
+    /**
+     * Finds the user who has registered the given public key.
+     *
+     * @return null if no user has this key.
+     */
+    @CheckForNull
+    public User findUser(@NonNull PublicKey key) {
+        KeyFingerprint fingerprint = KeyFingerprint.of(key);
+        if (fingerprint == null) {
+            return null;
+        }
+        if (!built) {
+            build();
+        }
+        for (String id : usersByFingerprint.getOrDefault(fingerprint, NO_USERS)) {
+            User u = User.getById(id, false);
+            if (u == null) {
+                continue;
+            }
+            UserPropertyImpl p = u.getProperty(UserPropertyImpl.class);
+            if (p != null && p.has(key)) {
+                return u;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of distinct fingerprints currently indexed.
+     */
+    public int size() {
+        return usersByFingerprint.size();
+    }
+
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (User u : User.getAll()) {
+            update(u);
+        }
+        built = true;
+        LOGGER.log(Level.FINE, "Indexed {0} authorized keys in {1}ms",
+                new Object[] {usersByFingerprint.size(), (System.nanoTime() - start) / 1_000_000});
+        scheduleSave();
+    }
+
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED, fatal = false)
+    public static void init() {
+        get().load();
+    }
+
+    /**
+     * Populates the index from disk, or schedules a rebuild if the persisted copy cannot be trusted.
+     *
+     * @return whether the persisted copy was used.
+     */
+    boolean load() {
+        AuthorizedKeysIndexFile file = getFile();
+        if (file.exists() && !file.isOlderThan(getUsersDir())) {
+            try {
+                Map<String, Set<KeyFingerprint>> persisted = file.read();
+                synchronized (this) {
+                    if (!built) {
+                        persisted.forEach(this::update);
+                        built = true;
+                    }
+                }
+                LOGGER.log(Level.FINE, "Loaded authorized keys of {0} users from {1}", new Object[] {persisted.size(), file});
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Discarding corrupt authorized key index " + file, e);
+            }
+        } else {
+            LOGGER.log(Level.FINE, "Authorized key index {0} is missing or stale", file);
+        }
+        Timer.get().submit(this::build);
+        return false;
+    }
+
+    /**
+     * Writes a pending save right away, so that the index is not found stale after the restart.
+     */
+    @Terminator
+    public static void flush() {
+        AuthorizedKeysIndex index = get();
+        if (index.saveScheduled.get()) {
+            index.save();
+        }
+    }
+
+    private void scheduleSave() {
+        if (built && saveScheduled.compareAndSet(false, true)) {
+            Timer.get().schedule(this::save, SAVE_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    void save() {
+        saveScheduled.set(false);
+        Map<String, Set<KeyFingerprint>> snapshot;
+        synchronized (this) {
+            snapshot = new HashMap<>(fingerprintsByUser);
+        }
+        AuthorizedKeysIndexFile file = getFile();
+        try {
+            file.write(snapshot);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save authorized key index " + file, e);
+        }
+    }
+
+    private static AuthorizedKeysIndexFile getFile() {
+        return new AuthorizedKeysIndexFile(new File(Jenkins.get().getRootDir(), "sshd-authorized-keys.idx"));
+    }
+
+    private static File getUsersDir() {
+        return new File(Jenkins.get().getRootDir(), "users");
+    }
+
+    /**
+     * Brings the entries of the given user up to date.
+     */
+    synchronized void update(@NonNull User u) {
+        UserPropertyImpl p = u.getProperty(UserPropertyImpl.class);
+        update(u.getId(), p == null ? Set.of() : p.getKeyFingerprints());
+    }
+
+    synchronized void update(@NonNull String id, @NonNull Set<KeyFingerprint> fingerprints) {
+        Set<KeyFingerprint> previous = fingerprints.isEmpty()
+                ? fingerprintsByUser.remove(id)
+                : fingerprintsByUser.put(id, fingerprints);
+        if (previous != null) {
+            for (KeyFingerprint fingerprint : previous) {
+                if (!fingerprints.contains(fingerprint)) {
+                    usersByFingerprint.computeIfPresent(fingerprint, (k, ids) -> without(ids, id));
+                }
+            }
+        }
+        for (KeyFingerprint fingerprint : fingerprints) {
+            usersByFingerprint.merge(fingerprint, new String[] {id}, (ids, unused) -> with(ids, id));
+        }
+        if (!fingerprints.equals(previous == null ? Set.of() : previous)) {
+            scheduleSave();
+        }
+    }
+
+    synchronized void remove(@NonNull String id) {
+        update(id, Set.of());
+    }
+
+    private static String[] with(String[] ids, String id) {
+        int i = Arrays.binarySearch(ids, id);
+        if (i >= 0) {
+            return ids;
+        }
+        int at = -i - 1;
+        String[] result = new String[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, at);
+        result[at] = id;
+        System.arraycopy(ids, at, result, at + 1, ids.length - at);
+        return result;
+    }
+
+    private static String[] without(String[] ids, String id) {
+        int i = Arrays.binarySearch(ids, id);
+        if (i < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null; // drops the mapping
+        }
+        String[] result = new String[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, i);
+        System.arraycopy(ids, i + 1, result, i, ids.length - i - 1);
+        return result;
+    }
+
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof User) {
+            update((User) o);
+            // even if the keys are unchanged, rewrite the index so that it is not newer than the user on next startup
+            scheduleSave();
+        }
+    }
+
+    @Override
+    public void onDeleted(Saveable o, XmlFile file) {
+        if (o instanceof User) {
+            remove(((User) o).getId());
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AuthorizedKeysIndex.class.getName());
+}
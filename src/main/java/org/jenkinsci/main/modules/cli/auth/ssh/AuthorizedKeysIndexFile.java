@@ -0,0 +1,184 @@
+package org.jenkinsci.main.modules.cli.auth.ssh;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Functions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk form of {@link AuthorizedKeysIndex}.
+ *
+ * <p>
+ * The file starts with a magic number, a format version and the number of users. Each user is then stored as
+ * its UTF-8 encoded ID and its {@link KeyFingerprint}s, all length-prefixed. A CRC32 of everything before it
+ * closes the file, so a truncated or otherwise damaged file is detected and rebuilt rather than trusted.
+ */
+final class AuthorizedKeysIndexFile {
+    private static final int MAGIC = 0x4A534B49; // "JSKI"
+    /**
+     * Bump whenever the layout or the fingerprint algorithm changes; older files are then discarded and rebuilt.
+     */
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 4;
+
+    private final File file;
+
+    AuthorizedKeysIndexFile(@NonNull File file) {
+        this.file = file;
+    }
+
+    boolean exists() {
+        return file.isFile();
+    }
+
+    /**
+     * Checks if any user has been added, removed or saved since this file was written.
+     * Only file timestamps are looked at, so this is much cheaper than loading the users.
+     * The index is rewritten after every user save, so this only holds for users changed while Jenkins was down.
+     *
+     * @param usersDir the directory holding user records
+     */
+    boolean isOlderThan(@NonNull File usersDir) {
+        long stamp = file.lastModified();
+        // file systems with coarse timestamps may give both files the same one, so err on the side of rebuilding
+        if (new File(usersDir, "users.xml").lastModified() >= stamp) {
+            return true;
+        }
+        File[] dirs = usersDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (new File(dir, "config.xml").lastModified() >= stamp) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the fingerprints of all users.
+     *
+     * @throws IOException if the file cannot be read, is corrupt or has an unknown version.
+     */
+    @NonNull
+    Map<String, Set<KeyFingerprint>> read() throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected size " + size + " of " + file);
+            }
+            ByteBuffer buf = map(ch, (int) size);
+            int bodySize = (int) size - TRAILER_SIZE;
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().limit(bodySize));
+            if ((int) crc.getValue() != buf.getInt(bodySize)) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            buf.limit(bodySize);
+
+            if (buf.getInt() != MAGIC) {
+                throw new IOException(file + " is not an authorized key index");
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + file);
+            }
+            int users = buf.getInt();
+            Map<String, Set<KeyFingerprint>> result = new HashMap<>();
+            byte[] digest = new byte[KeyFingerprint.LENGTH];
+            for (int i = 0; i < users; i++) {
+                byte[] id = new byte[Short.toUnsignedInt(buf.getShort())];
+                buf.get(id);
+                int count = Short.toUnsignedInt(buf.getShort());
+                Set<KeyFingerprint> fingerprints = new HashSet<>();
+                for (int j = 0; j < count; j++) {
+                    buf.get(digest);
+                    fingerprints.add(KeyFingerprint.fromBytes(digest));
+                }
+                result.put(new String(id, StandardCharsets.UTF_8), Set.copyOf(fingerprints));
+            }
+            if (buf.hasRemaining()) {
+                throw new IOException("Trailing garbage in " + file);
+            }
+            return result;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated " + file, e);
+        }
+    }
+
+    /**
+     * On Windows a mapped file cannot be replaced until the mapping is garbage collected,
+     * which would block the next {@link #write}, so the file is read into the heap there instead.
+     */
+    private static ByteBuffer map(FileChannel ch, int size) throws IOException {
+        if (!Functions.isWindows()) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf) < 0) {
+                throw new BufferUnderflowException();
+            }
+        }
+        return buf.flip();
+    }
+
+    /**
+     * Atomically replaces the file with the given fingerprints.
+     */
+    void write(@NonNull Map<String, Set<KeyFingerprint>> fingerprintsByUser) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(fingerprintsByUser.size());
+        for (Map.Entry<String, Set<KeyFingerprint>> e : fingerprintsByUser.entrySet()) {
+            byte[] id = e.getKey().getBytes(StandardCharsets.UTF_8);
+            if (id.length > 0xFFFF || e.getValue().size() > 0xFFFF) {
+                throw new IOException("Cannot index user " + e.getKey());
+            }
+            out.writeShort(id.length);
+            out.write(id);
+            out.writeShort(e.getValue().size());
+            for (KeyFingerprint fingerprint : e.getValue()) {
+                out.write(fingerprint.getBytes());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Path target = file.toPath();
+        Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package org.jenkinsci.main.modules.cli.auth.ssh;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * SHA-256 digest of the X.509 encoding of a {@link PublicKey}.
+ *
+ * <p>
+ * The X.509 form is canonical, so two keys with the same parameters yield the same fingerprint
+ * no matter which security provider decoded them. That lets us compare keys with a hash lookup
+ * instead of a parameter-by-parameter comparison.
+ */
+@Restricted(NoExternalUse.class)
+public final class KeyFingerprint implements Comparable<KeyFingerprint> {
+    /**
+     * Size of the fingerprint in bytes.
+     */
+    public static final int LENGTH = 32;
+
+    private final byte[] digest;
+    private final int hash;
+
+    private KeyFingerprint(byte[] digest) {
+        this.digest = digest;
+        // the digest is already uniformly distributed, so its leading bytes make a fine hash code
+        this.hash = (digest[0] & 0xFF) << 24 | (digest[1] & 0xFF) << 16 | (digest[2] & 0xFF) << 8 | (digest[3] & 0xFF);
+    }
+
+    /**
+     * Computes the fingerprint of the given key.
+     *
+     * @return null if the key has no encoded form.
+     */
+    @CheckForNull
+    public static KeyFingerprint of(@CheckForNull PublicKey key) {
+        if (key == null) {
+            return null;
+        }
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            return new KeyFingerprint(MessageDigest.getInstance("SHA-256").digest(encoded));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is mandatory on every JVM", e);
+        }
+    }
+
+    /**
+     * Wraps a digest previously obtained from {@link #getBytes()}.
+     */
+    @NonNull
+    public static KeyFingerprint fromBytes(@NonNull byte[] digest) {
+        if (digest.length != LENGTH) {
+            throw new IllegalArgumentException("Expected " + LENGTH + " bytes but got " + digest.length);
+        }
+        return new KeyFingerprint(digest.clone());
+    }
+
+    /**
+     * Returns a copy of the raw digest.
+     */
+    @NonNull
+    public byte[] getBytes() {
+        return digest.clone();
+    }
+
+    @Override
+    public int compareTo(KeyFingerprint that) {
+        return Arrays.compareUnsigned(this.digest, that.digest);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyFingerprint)) {
+            return false;
+        }
+        KeyFingerprint that = (KeyFingerprint) o;
+        return hash == that.hash && Arrays.equals(digest, that.digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "SHA256:" + Base64.getEncoder().withoutPadding().encodeToString(digest);
+    }
+}
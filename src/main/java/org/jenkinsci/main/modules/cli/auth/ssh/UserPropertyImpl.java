@@ -13,10 +13,13 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.sshd.common.config.keys.PublicKeyEntry;
-import org.apache.sshd.server.auth.pubkey.KeySetPublickeyAuthenticator;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
@@ -27,6 +30,12 @@ import org.kohsuke.stapler.QueryParameter;
 public class UserPropertyImpl extends UserProperty {
     public String authorizedKeys;
 
+    /**
+     * Fingerprints of {@link #authorizedKeys}, computed on first use.
+     * Since {@link #authorizedKeys} is a public field, the cache remembers which value it was computed from.
+     */
+    private transient volatile AuthorizedKeys cache;
+
     @DataBoundConstructor
     public UserPropertyImpl(String authorizedKeys) {
         this.authorizedKeys = authorizedKeys;
@@ -36,10 +45,22 @@ public class UserPropertyImpl extends UserProperty {
      * Checks if this user has the given public key in his {@link #authorizedKeys}.
      */
     public boolean has(PublicKey pk) {
+        KeyFingerprint fingerprint = KeyFingerprint.of(pk);
+        return fingerprint != null && getKeyFingerprints().contains(fingerprint);
+    }
 
-        KeySetPublickeyAuthenticator keySetPublickeyAuthenticator =
-                new KeySetPublickeyAuthenticator(getClass().getName(), getPublicKeys(this.authorizedKeys));
-        return keySetPublickeyAuthenticator.authenticate(null, pk, null);
+    /**
+     * Fingerprints of all the keys in {@link #authorizedKeys} that could be parsed.
+     */
+    @NonNull
+    Set<KeyFingerprint> getKeyFingerprints() {
+        String keys = authorizedKeys;
+        AuthorizedKeys c = cache;
+        if (c == null || c.source != keys) {
+            c = new AuthorizedKeys(keys);
+            cache = c;
+        }
+        return c.fingerprints;
     }
 
     public boolean isAuthorizedKey(String sig) {
@@ -62,13 +83,46 @@ public class UserPropertyImpl extends UserProperty {
         return
                 Arrays.stream(keys.split("\n")).map(s -> {
                     try {
-                        return PublicKeyEntry.parsePublicKeyEntry(s).resolvePublicKey(null, null, null);
+                        return parsePublicKey(s);
                     } catch (Exception e) {
                         throw new RuntimeException(e);
                     }
                 }).toList();
     }
 
+    private static PublicKey parsePublicKey(String line) throws Exception {
+        return PublicKeyEntry.parsePublicKeyEntry(line).resolvePublicKey(null, null, null);
+    }
+
+    /**
+     * Immutable snapshot of the fingerprints parsed out of a given {@link #authorizedKeys} value.
+     */
+    private static final class AuthorizedKeys {
+        private final String source;
+        private final Set<KeyFingerprint> fingerprints;
+
+        AuthorizedKeys(String source) {
+            this.source = source;
+            Set<KeyFingerprint> parsed = new HashSet<>();
+            if (source != null) {
+                for (String line : source.split("\n")) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        KeyFingerprint fingerprint = KeyFingerprint.of(parsePublicKey(line.trim()));
+                        if (fingerprint != null) {
+                            parsed.add(fingerprint);
+                        }
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Skipping unparseable authorized key: " + line, e);
+                    }
+                }
+            }
+            this.fingerprints = Set.copyOf(parsed);
+        }
+    }
+
     @Extension
     @Symbol("sshPublicKey")
     public static final class DescriptorImpl extends UserPropertyDescriptor {
@@ -105,12 +159,14 @@ public class UserPropertyImpl extends UserProperty {
 
     }
 
+    /**
+     * Finds the user who has registered the given public key.
+     *
+     * @see AuthorizedKeysIndex
+     */
     public static User findUser(PublicKey identity) {
-        for (User u : User.getAll()) {
-            UserPropertyImpl p = u.getProperty(UserPropertyImpl.class);
-            if (p!=null && p.has(identity))
-                return u;
-        }
-        return null;
+        return AuthorizedKeysIndex.get().findUser(identity);
     }
+
+    private static final Logger LOGGER = Logger.getLogger(UserPropertyImpl.class.getName());
 }
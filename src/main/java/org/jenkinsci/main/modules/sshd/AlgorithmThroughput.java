@@ -0,0 +1,99 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.Mac;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the ciphers and MACs of the SSH transport process bulk data on this JVM,
+ * so that administrators can order them in the {@link SSHD} configuration from data.
+ *
+ * <p>
+ * Each algorithm processes maximum size packets for a short while, after a warm-up,
+ * the way {@link org.apache.sshd.common.session.helpers.AbstractSession} encrypts and authenticates outgoing packets.
+ */
+final class AlgorithmThroughput {
+    /**
+     * Payload of the largest packet the server sends.
+     */
+    static final int PACKET_SIZE = 32 * 1024;
+
+    /**
+     * Size of the packet length field, authenticated but not encrypted by AEAD ciphers.
+     */
+    private static final int AAD_SIZE = 4;
+
+    private static final long WARMUP_MILLIS = 50;
+
+    private AlgorithmThroughput() {
+    }
+
+    /**
+     * Encrypts packets with the given cipher.
+     *
+     * @return the throughput in MiB/s.
+     */
+    static double measureCipher(NamedFactory<Cipher> factory, long millis) throws Exception {
+        Cipher cipher = factory.create();
+        cipher.init(Cipher.Mode.Encrypt, random(cipher.getKdfSize()), random(cipher.getIVSize()));
+        byte[] packet = new byte[AAD_SIZE + PACKET_SIZE + cipher.getAuthenticationTagSize()];
+        boolean aead = cipher.getAuthenticationTagSize() > 0;
+        return run(millis, () -> {
+            if (aead) {
+                cipher.updateWithAAD(packet, 0, AAD_SIZE, PACKET_SIZE);
+            } else {
+                cipher.update(packet, AAD_SIZE, PACKET_SIZE);
+            }
+        });
+    }
+
+    /**
+     * Computes the MAC of packets with the given algorithm.
+     *
+     * @return the throughput in MiB/s.
+     */
+    static double measureMac(NamedFactory<Mac> factory, long millis) throws Exception {
+        Mac mac = factory.create();
+        mac.init(random(mac.getDefaultBlockSize()));
+        byte[] packet = new byte[AAD_SIZE + PACKET_SIZE];
+        byte[] tag = new byte[mac.getDefaultBlockSize()];
+        long[] sequence = new long[1];
+        return run(millis, () -> {
+            mac.updateUInt(sequence[0]++);
+            mac.update(packet, 0, packet.length);
+            mac.doFinal(tag, 0);
+        });
+    }
+
+    private static double run(long millis, Packet packet) throws Exception {
+        long warmupEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+        while (System.nanoTime() - warmupEnd < 0) {
+            packet.process();
+        }
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        long packets = 0;
+        long now;
+        do {
+            packet.process();
+            packets++;
+            now = System.nanoTime();
+        } while (now - end < 0);
+        double seconds = (now - start) / 1e9;
+        return packets * (double) PACKET_SIZE / (1024 * 1024) / seconds;
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    @FunctionalInterface
+    private interface Packet {
+        void process() throws Exception;
+    }
+}
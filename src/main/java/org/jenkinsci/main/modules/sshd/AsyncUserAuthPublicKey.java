@@ -0,0 +1,64 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.signature.Signature;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.server.auth.AsyncAuthException;
+import org.apache.sshd.server.auth.UserAuthFactory;
+import org.apache.sshd.server.auth.pubkey.PublickeyAuthenticator;
+import org.apache.sshd.server.auth.pubkey.UserAuthPublicKey;
+import org.apache.sshd.server.auth.pubkey.UserAuthPublicKeyFactory;
+import org.apache.sshd.server.session.ServerSession;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Public key authentication that consults the {@link hudson.security.SecurityRealm} off the NIO thread.
+ *
+ * <p>
+ * The {@link PublickeyAuthenticator} of the server, {@link PublicKeyAuthenticatorImpl}, only checks that the key
+ * is registered to the user, which is cheap. Once the client has also proven possession of the key,
+ * the realm check is handed to {@link AuthenticationExecutor}, and MINA completes the exchange when it is done.
+ *
+ * <p>
+ * Only the signed request is deferred: MINA treats an asynchronous outcome as final,
+ * so deferring the unsigned query for a key would skip the signature check.
+ */
+class AsyncUserAuthPublicKey extends UserAuthPublicKey {
+    static final UserAuthFactory FACTORY = new UserAuthPublicKeyFactory() {
+        @Override
+        public UserAuthPublicKey createUserAuth(ServerSession session) {
+            return new AsyncUserAuthPublicKey(getSignatureFactories());
+        }
+    };
+
+    AsyncUserAuthPublicKey(List<NamedFactory<Signature>> factories) {
+        super(factories);
+    }
+
+    @Override
+    protected Boolean doAuth(Buffer buffer, boolean init) throws Exception {
+        Boolean result = super.doAuth(buffer, init);
+        if (!Boolean.TRUE.equals(result)) {
+            return result; // key rejected, or the client was only asking whether we would accept it
+        }
+        ServerSession session = getServerSession();
+        String username = getUsername();
+        AsyncAuthException async = new AsyncAuthException();
+        AtomicReference<UserDetails> userDetails = new AtomicReference<>();
+        AuthenticationExecutor.get().execute("SSH authentication of " + username + " from " + session.getRemoteAddress(),
+                () -> {
+                    userDetails.set(PublicKeyAuthenticatorImpl.authorize(username));
+                    return userDetails.get() != null;
+                },
+                // not called for a realm answer arriving after the timeout, so such a session never gets an identity
+                success -> {
+                    boolean authed = success && PublicKeyAuthenticatorImpl.authenticated(session, username, userDetails.get());
+                    SshdMetrics.get().authenticationCompleted(authed);
+                    async.setAuthed(authed);
+                });
+        throw async;
+    }
+}
@@ -4,7 +4,6 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.User;
 import hudson.security.ACL;
 import hudson.security.ACLContext;
-import jenkins.model.Jenkins;
 import org.apache.sshd.server.channel.ChannelSession;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.server.Environment;
@@ -12,6 +11,8 @@ import org.apache.sshd.server.ExitCallback;
 import org.apache.sshd.server.session.ServerSession;
 import org.apache.sshd.server.session.ServerSessionAware;
 import org.jenkinsci.main.modules.sshd.SshCommandFactory.CommandLine;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -19,36 +20,49 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Partial {@link Command} implementation that uses a thread to run a command.
  *
+ * <p>
+ * Commands run on the bounded {@link CommandExecutor}. When it is saturated, the command is not run at all
+ * and the client gets {@link #BUSY_EXIT_CODE}.
+ *
  * @author Kohsuke Kawaguchi
  */
 public abstract class AsynchronousCommand implements Command, ServerSessionAware, Runnable {
+    /**
+     * Exit code reported when the server is too busy to run the command, {@code EX_TEMPFAIL} from {@code sysexits.h}.
+     * The client may retry later.
+     */
+    public static final int BUSY_EXIT_CODE = 75;
+
     private InputStream in;
     private OutputStream out;
     private OutputStream err;
     private ExitCallback callback;
     private CommandLine cmdLine;
-    private Thread thread;
     private ServerSession session;
     private Environment environment;
+    private long startNanos;
 
     protected AsynchronousCommand(CommandLine cmdLine) {
         this.cmdLine = cmdLine;
     }
 
     public void setInputStream(InputStream in) {
-        this.in = in;
+        this.in = CountingStreams.in(in, n -> SshdMetrics.get().bytesIn(session, n));
     }
     
     public void setOutputStream(OutputStream out) {
-        this.out = out;
+        this.out = CountingStreams.out(out, n -> SshdMetrics.get().bytesOut(session, n));
     }
 
     public void setErrorStream(OutputStream err) {
-        this.err = err;
+        this.err = CountingStreams.out(err, n -> SshdMetrics.get().bytesOut(session, n));
     }
 
     public InputStream getInputStream() {
@@ -79,14 +93,27 @@ public abstract class AsynchronousCommand implements Command, ServerSessionAware
         this.session = session;
     }
 
+    /**
+     * The user running this command, or null if security is disabled.
+     *
+     * @throws AuthenticationException if the user has been deleted or disabled since the session was authenticated.
+     */
     @CheckForNull
     protected User getCurrentUser() {
-        final Jenkins jenkins = Jenkins.get();
-        if (jenkins.isUseSecurity()) {
-            return User.getById(getSession().getUsername(), true);    // then UserAuthNamedFactory must have done public key auth
-        } else {
-            return null;    // not authenticated. anonymous.
-        }
+        SessionIdentity identity = SessionIdentity.resolve(getSession());    // then UserAuthNamedFactory must have done public key auth
+        return identity == null ? null : identity.getUser();
+    }
+
+    /**
+     * The authentication of the user running this command, or null if security is disabled.
+     * It is shared by all the commands of the SSH session.
+     *
+     * @throws AuthenticationException if the user has been deleted or disabled since the session was authenticated.
+     */
+    @CheckForNull
+    protected Authentication getCurrentAuthentication() {
+        SessionIdentity identity = SessionIdentity.resolve(getSession());
+        return identity == null ? null : identity.getAuthentication();
     }
 
     public Environment getEnvironment() {
@@ -99,9 +126,17 @@ public abstract class AsynchronousCommand implements Command, ServerSessionAware
 
     public void start(Environment env) throws IOException {
         this.environment = env;
-        thread = new Thread(this);
-        thread.setName("SSH command: " + cmdLine.getSingleLine());
-        thread.start();
+        this.startNanos = System.nanoTime();
+        try {
+            CommandExecutor.get().execute(this, "SSH command: " + cmdLine.getSingleLine());
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Rejected SSH command: {0}", cmdLine.getSingleLine());
+            String message = "Too many concurrent SSH commands, try again later";
+            //TODO: Consider switching to UTF-8
+            err.write((message + "\n").getBytes(Charset.defaultCharset()));
+            flushOutputs();
+            callback.onExit(BUSY_EXIT_CODE, message);
+        }
     }
 
     protected abstract int runCommand() throws Exception;
@@ -109,16 +144,27 @@ public abstract class AsynchronousCommand implements Command, ServerSessionAware
     public void run() {
         try {
             int i;
-            User user = getCurrentUser();
-            if (user != null) {
-              try (ACLContext ctx = ACL.as(user)) {
+            Authentication auth = getCurrentAuthentication();
+            if (auth != null) {
+              try (ACLContext ctx = ACL.as2(auth)) {
                 i = AsynchronousCommand.this.runCommand();
               }
             } else {
               i = AsynchronousCommand.this.runCommand();
             }
             flushOutputs();
+            recordCompletion();
             callback.onExit(i);
+        } catch (AuthenticationException e) {
+            LOGGER.log(Level.FINE, "Refusing SSH command of a user who is no longer valid", e);
+            String message = "Authentication is no longer valid: " + e.getMessage();
+            //TODO: Consider switching to UTF-8
+            PrintWriter ps = new PrintWriter(new OutputStreamWriter(err, Charset.defaultCharset()));
+            ps.println(message);
+            ps.flush();
+            flushOutputs();
+            recordCompletion();
+            callback.onExit(255, message);
         } catch (Exception e) {
             // report the cause of the death to the client
             //TODO: Consider switching to UTF-8
@@ -126,10 +172,15 @@ public abstract class AsynchronousCommand implements Command, ServerSessionAware
             e.printStackTrace(ps);
             ps.flush();
             flushOutputs();
+            recordCompletion();
             callback.onExit(255,e.getMessage());
         }
     }
 
+    private void recordCompletion() {
+        SshdMetrics.get().commandCompleted(cmdLine.isEmpty() ? "" : cmdLine.get(0), System.nanoTime() - startNanos);
+    }
+
     /**
      *  working around SSHD-154
      */
@@ -150,4 +201,6 @@ public abstract class AsynchronousCommand implements Command, ServerSessionAware
     public void destroy() {
         Thread.currentThread().interrupt();
     }
+
+    private static final Logger LOGGER = Logger.getLogger(AsynchronousCommand.class.getName());
 }
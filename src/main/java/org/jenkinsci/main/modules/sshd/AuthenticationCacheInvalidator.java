@@ -0,0 +1,39 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * Drops what the authentication caches know about a user whenever that user is saved or deleted.
+ *
+ * @see FailedAuthenticationCache
+ * @see UserDetailsCache
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class AuthenticationCacheInvalidator extends SaveableListener {
+    @Override
+    public void onChange(Saveable o, XmlFile file) {
+        if (o instanceof User) {
+            invalidate((User) o);
+        }
+    }
+
+    @Override
+    public void onDeleted(Saveable o, XmlFile file) {
+        if (o instanceof User) {
+            invalidate((User) o);
+        }
+    }
+
+    private static void invalidate(User u) {
+        String key = User.idStrategy().keyFor(u.getId());
+        FailedAuthenticationCache.get().invalidate(key);
+        UserDetailsCache.get().invalidate(key);
+    }
+}
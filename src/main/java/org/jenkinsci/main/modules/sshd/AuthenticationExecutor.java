@@ -0,0 +1,169 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded thread pool asking the {@link hudson.security.SecurityRealm} about users whose public key was accepted.
+ *
+ * <p>
+ * This used to happen on the NIO thread receiving the authentication request, which also serves other sessions,
+ * so a slow realm stalled unrelated traffic. Now the NIO thread only queues the check here and moves on,
+ * and the authentication exchange completes once the check does.
+ *
+ * <p>
+ * A check that cannot be queued, or that takes longer than the timeout, counts as a failed authentication.
+ *
+ * @see AsyncUserAuthPublicKey
+ */
+@Restricted(NoExternalUse.class)
+public final class AuthenticationExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutNanos;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    AuthenticationExecutor(int threads, int queueSize, long timeoutNanos) {
+        int n = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                new NamingThreadFactory(new DaemonThreadFactory(), "SSH authentication"));
+        executor.allowCoreThreadTimeOut(true);
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @NonNull
+    public static AuthenticationExecutor get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Runs the given check, and passes its outcome to the callback exactly once.
+     * The outcome is false if the check throws, times out, or cannot be queued,
+     * in which case the callback may run on the calling thread.
+     */
+    void execute(@NonNull String threadName, @NonNull BooleanSupplier check, @NonNull Consumer<Boolean> callback) {
+        Attempt attempt = new Attempt(threadName, check, callback);
+        Future<?> task;
+        try {
+            task = executor.submit(attempt);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOGGER.log(Level.FINE, "Too many pending SSH authentications, rejecting {0}", threadName);
+            attempt.complete(false);
+            return;
+        }
+        if (timeoutNanos > 0) {
+            Timer.get().schedule(() -> {
+                if (attempt.complete(false)) {
+                    timedOut.increment();
+                    LOGGER.log(Level.WARNING, "{0} did not complete within {1}ms",
+                            new Object[]{ threadName, TimeUnit.NANOSECONDS.toMillis(timeoutNanos) });
+                    task.cancel(false); // drops it if still queued, but lets a running realm call finish
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Number of checks waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Approximate number of checks currently running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of checks rejected because the queue was full, since startup.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Number of checks given up on because they took too long, since startup.
+     */
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    private static final class Attempt implements Runnable {
+        private final String threadName;
+        private final BooleanSupplier check;
+        private final Consumer<Boolean> callback;
+        private final long queued = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Attempt(String threadName, BooleanSupplier check, Consumer<Boolean> callback) {
+            this.threadName = threadName;
+            this.check = check;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            long started = System.nanoTime();
+            SshdMetrics metrics = SshdMetrics.get();
+            metrics.authorizationQueued(started - queued);
+            if (done.get()) {
+                return; // timed out while queued
+            }
+            Thread t = Thread.currentThread();
+            String name = t.getName();
+            t.setName(threadName);
+            boolean success = false;
+            try {
+                success = check.getAsBoolean();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, threadName + " failed", e);
+            } finally {
+                t.setName(name);
+                metrics.authorizationCompleted(System.nanoTime() - started);
+            }
+            complete(success);
+        }
+
+        /**
+         * @return false if the outcome was already reported.
+         */
+        boolean complete(boolean success) {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            callback.accept(success);
+            return true;
+        }
+    }
+
+    private static final class Holder {
+        private static final AuthenticationExecutor INSTANCE = new AuthenticationExecutor(
+                SystemProperties.getInteger(AuthenticationExecutor.class.getName() + ".threads", 8),
+                SystemProperties.getInteger(AuthenticationExecutor.class.getName() + ".queueSize", 256),
+                TimeUnit.SECONDS.toNanos(SystemProperties.getLong(AuthenticationExecutor.class.getName() + ".timeout", 30L)));
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(AuthenticationExecutor.class.getName());
+}
@@ -0,0 +1,289 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.util.SystemProperties;
+import org.apache.sshd.server.command.Command;
+import org.springframework.security.core.Authentication;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SshCommandFactory} providing the {@code batch} command, which runs many {@link CLICommand}s over one channel.
+ *
+ * <p>
+ * Each line read from stdin is a command line, run as the user of the session.
+ * The user is resolved once for the whole batch, and all the commands share a single channel and thread,
+ * so running hundreds of small commands does not pay the setup cost of as many SSH commands.
+ * With {@code --parallel N}, up to N commands run at the same time on {@link CommandExecutor}.
+ *
+ * <p>
+ * The commands do not get any input. Their output is written to stdout as frames, each made of:
+ * <ul>
+ * <li>a byte for the kind of the frame: {@link #STDOUT}, {@link #STDERR} or {@link #EXIT},
+ * <li>the number of the input line of the command, starting at 1, as a 4-byte big-endian integer,
+ * <li>the length of the payload, as a 4-byte big-endian integer,
+ * <li>the payload: output of the command, or for {@link #EXIT} its exit code as a 4-byte big-endian integer.
+ * </ul>
+ * Every command ends with exactly one {@link #EXIT} frame. Blank lines are skipped.
+ * Frames of parallel commands are interleaved, in no particular order.
+ *
+ * <p>
+ * The batch itself exits with 0 if every command did, with 1 otherwise.
+ */
+@Extension
+public class BatchCommandFactory extends SshCommandFactory {
+    public static final String NAME = "batch";
+
+    public static final int STDOUT = 1;
+    public static final int STDERR = 2;
+    public static final int EXIT = 3;
+
+    /**
+     * Output of a command is sent once this much has accumulated, or when the command flushes it.
+     */
+    private static final int FRAME_SIZE = 8192;
+
+    private static final int MAX_PARALLEL = SystemProperties.getInteger(BatchCommandFactory.class.getName() + ".maxParallel", 16);
+
+    @Override
+    public Set<String> getCommandNames() {
+        return Set.of(NAME);
+    }
+
+    @Override
+    public Command create(CommandLine commandLine) {
+        if (!NAME.equals(commandLine.get(0))) {
+            return null;
+        }
+        return new BatchCommand(commandLine);
+    }
+
+    private static final class BatchCommand extends AsynchronousCommand {
+        BatchCommand(CommandLine cmdLine) {
+            super(cmdLine);
+        }
+
+        @Override
+        protected int runCommand() throws Exception {
+            Integer parallelism = parseParallelism();
+            if (parallelism == null) {
+                //TODO: Consider switching to UTF-8
+                PrintWriter w = new PrintWriter(new OutputStreamWriter(getErrorStream(), Charset.defaultCharset()));
+                w.println("Usage: batch [--parallel N], with N between 1 and " + MAX_PARALLEL);
+                w.flush();
+                return 2;
+            }
+
+            Authentication auth = getCurrentAuthentication();
+            FrameWriter frames = new FrameWriter(getOutputStream());
+            AtomicBoolean failed = new AtomicBoolean();
+            Semaphore slots = new Semaphore(parallelism);
+            //TODO: Consider switching to UTF-8
+            BufferedReader in = new BufferedReader(new InputStreamReader(getInputStream(), Charset.defaultCharset()));
+            int lineNumber = 0;
+            String line;
+            try {
+                while ((line = in.readLine()) != null) {
+                    int seq = ++lineNumber;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    CommandLine cmd = new CommandLine(line);
+                    if (parallelism == 1) {
+                        // already running as the user, see AsynchronousCommand.run()
+                        if (run(seq, cmd, auth, frames) != 0) {
+                            failed.set(true);
+                        }
+                        continue;
+                    }
+                    slots.acquire();
+                    try {
+                        CommandExecutor.get().execute(() -> {
+                            // like AsynchronousCommand.run(), only switch to the user if security is enabled
+                            try (ACLContext ctx = auth == null ? null : ACL.as2(auth)) {
+                                if (run(seq, cmd, auth, frames) != 0) {
+                                    failed.set(true);
+                                }
+                            } catch (IOException e) {
+                                LOGGER.log(Level.FINE, "Failed to send the output of a batched SSH command", e);
+                                failed.set(true);
+                            } catch (Throwable t) {
+                                // the client waits for an exit code for every line
+                                LOGGER.log(Level.WARNING, "Batched SSH command #" + seq + " failed", t);
+                                failed.set(true);
+                                try {
+                                    frames.exit(seq, 255);
+                                } catch (IOException e) {
+                                    LOGGER.log(Level.FINE, "Failed to send the exit code of a batched SSH command", e);
+                                }
+                            } finally {
+                                slots.release();
+                            }
+                        }, "SSH command: batch #" + seq + ": " + line);
+                    } catch (RejectedExecutionException e) {
+                        slots.release();
+                        failed.set(true);
+                        frames.exit(seq, BUSY_EXIT_CODE);
+                    }
+                }
+            } finally {
+                slots.acquire(parallelism); // wait for the commands still running, also if the batch failed
+            }
+            return failed.get() ? 1 : 0;
+        }
+
+        /**
+         * @return null if the arguments are invalid.
+         */
+        @CheckForNull
+        private Integer parseParallelism() {
+            CommandLine cmdLine = getCmdLine();
+            if (cmdLine.size() == 1) {
+                return 1;
+            }
+            if (cmdLine.size() != 3 || !"--parallel".equals(cmdLine.get(1))) {
+                return null;
+            }
+            try {
+                int n = Integer.parseInt(cmdLine.get(2));
+                return n >= 1 && n <= MAX_PARALLEL ? n : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Runs one command of the batch, and sends its output and exit code.
+         */
+        private int run(int seq, CommandLine cmd, @CheckForNull Authentication auth, FrameWriter frames) throws IOException {
+            long start = System.nanoTime();
+            String name = cmd.isEmpty() ? "" : cmd.get(0);
+            int exitCode;
+            try (FrameOutputStream out = new FrameOutputStream(frames, STDOUT, seq);
+                 FrameOutputStream err = new FrameOutputStream(frames, STDERR, seq)) {
+                //TODO: Consider switching to UTF-8
+                PrintStream stdout = new PrintStream(out, false, Charset.defaultCharset().toString());
+                PrintStream stderr = new PrintStream(err, false, Charset.defaultCharset().toString());
+                CLICommand c = cmd.isEmpty() ? null : CLICommand.clone(name);
+                if (c == null) {
+                    stderr.println("Unknown command: " + name);
+                    exitCode = 255;
+                } else {
+                    if (auth != null) {
+                        c.setTransportAuth2(auth);
+                    }
+                    try {
+                        exitCode = c.main(cmd.subList(1, cmd.size()), Locale.getDefault(), InputStream.nullInputStream(),
+                                stdout, stderr);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace(stderr);
+                        exitCode = 255;
+                    }
+                }
+                stdout.flush();
+                stderr.flush();
+            }
+            frames.exit(seq, exitCode);
+            SshdMetrics.get().commandCompleted(name, System.nanoTime() - start);
+            return exitCode;
+        }
+    }
+
+    /**
+     * Writes frames to the output of the batch, one at a time.
+     */
+    private static final class FrameWriter {
+        private final DataOutputStream out;
+
+        FrameWriter(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        synchronized void write(int type, int seq, byte[] payload, int off, int len) throws IOException {
+            out.writeByte(type);
+            out.writeInt(seq);
+            out.writeInt(len);
+            out.write(payload, off, len);
+            out.flush();
+        }
+
+        void exit(int seq, int exitCode) throws IOException {
+            write(EXIT, seq, ByteBuffer.allocate(4).putInt(exitCode).array(), 0, 4);
+        }
+    }
+
+    /**
+     * Buffers output of one command, and sends it as frames of one kind.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final FrameWriter frames;
+        private final int type;
+        private final int seq;
+        private final byte[] buf = new byte[FRAME_SIZE];
+        private int count;
+
+        FrameOutputStream(FrameWriter frames, int type, int seq) {
+            this.frames = frames;
+            this.type = type;
+            this.seq = seq;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length) {
+                flush();
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buf.length) {
+                    flush();
+                }
+                int n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                frames.write(type, seq, buf, 0, count);
+                count = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BatchCommandFactory.class.getName());
+}
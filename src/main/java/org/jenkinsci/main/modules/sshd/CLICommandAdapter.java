@@ -3,13 +3,15 @@ package org.jenkinsci.main.modules.sshd;
 import hudson.CloseProofOutputStream;
 import hudson.Extension;
 import hudson.cli.CLICommand;
-import hudson.model.User;
 import org.apache.sshd.server.command.Command;
+import org.springframework.security.core.Authentication;
 
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * {@link SshCommandFactory} that invokes {@link CLICommand}s.
@@ -18,18 +20,45 @@ import java.util.Locale;
  */
 @Extension
 public class CLICommandAdapter extends SshCommandFactory {
+    /**
+     * Names as of the last {@link #getCommandNames()} call.
+     * {@link CLICommand#getName()} is derived from the class name every time it is called,
+     * so the names are only recomputed when {@link CommandFactoryImpl} rebuilds its dispatch table.
+     */
+    private volatile Set<String> names;
+
+    @Override
+    public Set<String> getCommandNames() {
+        Set<String> names = new HashSet<>();
+        for (CLICommand c : CLICommand.all()) {
+            names.add(c.getName());
+        }
+        return this.names = Set.copyOf(names);
+    }
+
     @Override
     public Command create(CommandLine commandLine) {
         String cmd = commandLine.get(0);
-        final CLICommand c = CLICommand.clone(cmd);
-        if (c==null)        return null;    // no such command
+        Set<String> names = this.names;
+        if (names == null) {
+            names = getCommandNames();
+        }
+        if (!names.contains(cmd))   return null;    // no such command
 
         return new AsynchronousCommand(commandLine) {
             @Override
             public int runCommand() throws IOException {
-                User u = getCurrentUser();
-                if (u != null) {
-                    c.setTransportAuth2(u.impersonate2());
+                // cloning instantiates the command, so do it on the worker rather than on the SSH I/O thread
+                CLICommand c = CLICommand.clone(cmd);
+                if (c == null) {
+                    // removed since the command was dispatched
+                    getErrorStream().write(("Unknown command: " + cmd + "\n").getBytes(Charset.defaultCharset()));
+                    return 255;
+                }
+
+                Authentication auth = getCurrentAuthentication();
+                if (auth != null) {
+                    c.setTransportAuth2(auth);
                 }
 
                 CommandLine cmds = getCmdLine();
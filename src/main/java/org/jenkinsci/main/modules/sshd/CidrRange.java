@@ -0,0 +1,110 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * A block of IPv4 or IPv6 addresses, such as {@code 192.168.0.0/16}.
+ */
+@Restricted(NoExternalUse.class)
+public final class CidrRange {
+    private final byte[] network;
+    private final int prefixLength;
+
+    private CidrRange(byte[] network, int prefixLength) {
+        this.network = network;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * The range of the given length containing the given address.
+     * A prefix longer than the address is clamped, so the range contains just that address.
+     */
+    @NonNull
+    public static CidrRange of(@NonNull InetAddress address, int prefixLength) {
+        byte[] bytes = address.getAddress();
+        int length = Math.max(0, Math.min(prefixLength, bytes.length * 8));
+        return new CidrRange(mask(bytes, length), length);
+    }
+
+    /**
+     * Parses {@code address/prefix}, or a plain address standing for itself.
+     * Only literal addresses are accepted, host names are not resolved.
+     *
+     * @throws IllegalArgumentException if the range is malformed.
+     */
+    @NonNull
+    public static CidrRange parse(@NonNull String range) {
+        String s = range.trim();
+        int slash = s.indexOf('/');
+        String host = slash < 0 ? s : s.substring(0, slash);
+        // host names never contain colons, and cannot be mistaken for four decimal numbers
+        if (!host.matches("[0-9a-fA-F.:]*:[0-9a-fA-F.:]*|\\d{1,3}(\\.\\d{1,3}){3}")) {
+            throw new IllegalArgumentException("Not an IP address: " + range);
+        }
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host); // does not resolve, since it is a literal
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not an IP address: " + range, e);
+        }
+        int bits = address.getAddress().length * 8;
+        int prefixLength = bits;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(s.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + range, e);
+            }
+            if (prefixLength < 0 || prefixLength > bits) {
+                throw new IllegalArgumentException("Invalid prefix length: " + range);
+            }
+        }
+        return of(address, prefixLength);
+    }
+
+    public boolean contains(@NonNull InetAddress address) {
+        byte[] bytes = address.getAddress();
+        return bytes.length == network.length && Arrays.equals(mask(bytes, prefixLength), network);
+    }
+
+    private static byte[] mask(byte[] bytes, int prefixLength) {
+        byte[] result = bytes.clone();
+        for (int i = 0; i < result.length; i++) {
+            int keep = Math.max(0, Math.min(8, prefixLength - i * 8));
+            result[i] &= (byte) (0xFF00 >>> keep);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CidrRange)) {
+            return false;
+        }
+        CidrRange that = (CidrRange) o;
+        return prefixLength == that.prefixLength && Arrays.equals(network, that.network);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(network) + prefixLength;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return InetAddress.getByAddress(network).getHostAddress() + "/" + prefixLength;
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
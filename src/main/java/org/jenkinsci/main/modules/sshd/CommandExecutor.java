@@ -0,0 +1,188 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded thread pool running {@link AsynchronousCommand}s.
+ *
+ * <p>
+ * With the default queue size of 0, a new thread is started for each command until {@link #getMaxPoolSize()}
+ * commands are running, and further commands are rejected.
+ * With a positive queue size, commands beyond the core pool size wait in the queue first,
+ * and threads up to the maximum are only started once the queue is full.
+ *
+ * <p>
+ * Alternatively, on Java 21 and newer, each command can run on its own virtual thread.
+ * Since those are cheap, they are bounded by a separate, much higher limit.
+ *
+ * @see AsynchronousCommand#BUSY_EXIT_CODE
+ * @see SSHD#isUseVirtualThreads()
+ */
+@Restricted(NoExternalUse.class)
+public final class CommandExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(CommandExecutor.class.getName());
+
+    /**
+     * Creates virtual threads, or null when running on a Java version without them.
+     * Looked up reflectively since the plugin is compiled for an older release.
+     */
+    @CheckForNull
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    private final ThreadPoolExecutor executor;
+    private final int maxVirtualThreads;
+    private final Semaphore virtualThreads;
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean useVirtualThreads;
+
+    CommandExecutor(int corePoolSize, int maxPoolSize, int queueSize, int maxVirtualThreads) {
+        int max = Math.max(1, maxPoolSize);
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(Math.max(0, Math.min(corePoolSize, max)), max, 60, TimeUnit.SECONDS, queue,
+                new NamingThreadFactory(new DaemonThreadFactory(), "SSH command"));
+        this.maxVirtualThreads = Math.max(1, maxVirtualThreads);
+        this.virtualThreads = new Semaphore(this.maxVirtualThreads);
+    }
+
+    public static CommandExecutor get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Runs the given task, naming the thread after it for diagnostics while it runs.
+     *
+     * @throws RejectedExecutionException if all the threads are busy and the queue is full.
+     */
+    void execute(Runnable task, String threadName) throws RejectedExecutionException {
+        if (isUseVirtualThreads()) {
+            executeOnVirtualThread(task, threadName);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                Thread t = Thread.currentThread();
+                String name = t.getName();
+                t.setName(threadName);
+                try {
+                    task.run();
+                } finally {
+                    t.setName(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private void executeOnVirtualThread(Runnable task, String threadName) {
+        if (!virtualThreads.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("Already running " + maxVirtualThreads + " commands");
+        }
+        try {
+            Thread t = VIRTUAL_THREAD_FACTORY.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    virtualThreads.release();
+                }
+            });
+            t.setName(threadName);
+            t.start();
+        } catch (RuntimeException | Error e) {
+            virtualThreads.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether commands run on virtual threads rather than on the thread pool.
+     * Always false on Java versions without virtual threads.
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads && VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    void setUseVirtualThreads(boolean useVirtualThreads) {
+        if (useVirtualThreads && VIRTUAL_THREAD_FACTORY == null) {
+            LOGGER.warning("Virtual threads require Java 21 or newer, running SSH commands on the thread pool instead");
+        }
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    @CheckForNull
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "SSH command ", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Virtual threads are not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Number of commands waiting for a thread.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Approximate number of commands currently running.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount() + maxVirtualThreads - virtualThreads.availablePermits();
+    }
+
+    /**
+     * Number of threads currently in the pool, busy or idle.
+     */
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    public int getMaxPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Number of commands rejected because the pool was saturated, since startup.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static final class Holder {
+        private static final CommandExecutor INSTANCE = new CommandExecutor(
+                SystemProperties.getInteger(CommandExecutor.class.getName() + ".corePoolSize", 16),
+                SystemProperties.getInteger(CommandExecutor.class.getName() + ".maxPoolSize", 512),
+                SystemProperties.getInteger(CommandExecutor.class.getName() + ".queueSize", 0),
+                SystemProperties.getInteger(CommandExecutor.class.getName() + ".maxVirtualThreads", 10000));
+    }
+}
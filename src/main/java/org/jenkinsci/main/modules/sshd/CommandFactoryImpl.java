@@ -1,13 +1,27 @@
 package org.jenkinsci.main.modules.sshd;
 
+import hudson.ExtensionList;
+import hudson.cli.CLICommand;
+import jenkins.ExtensionListListener;
 import org.apache.sshd.server.channel.ChannelSession;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.server.command.CommandFactory;
 import org.jenkinsci.main.modules.sshd.SshCommandFactory.CommandLine;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Use {@link SshCommandFactory}s to find the right implementation for the exec request from SSH clients.
  *
+ * <p>
+ * Factories that {@linkplain SshCommandFactory#getCommandNames() declare} what they handle are looked up by
+ * command name, so only they and the factories that declare nothing are asked, still in extension order.
+ *
  * @author Kohsuke Kawaguchi
  */
 public class CommandFactoryImpl implements CommandFactory {
@@ -15,11 +29,131 @@ public class CommandFactoryImpl implements CommandFactory {
     @Override
     public Command createCommand(ChannelSession channel, String command) {
         CommandLine cmd = new CommandLine(command);
-        for (SshCommandFactory scf : SshCommandFactory.all()) {
+        String name = cmd.isEmpty() ? "" : cmd.get(0);
+        for (SshCommandFactory scf : DispatchTable.get().candidates(name)) {
             Command c = scf.create(cmd);
             if (c!=null)
                 return c;
         }
         return new InvalidCommand(command);
     }
+
+    /**
+     * Snapshot of the {@link SshCommandFactory}s to ask for each command name.
+     * Rebuilt lazily after the extension lists it was built from change.
+     */
+    static final class DispatchTable {
+        private static volatile DispatchTable current;
+        /**
+         * Bumped whenever a relevant extension list changes, so that a table built concurrently is not kept.
+         */
+        private static final AtomicInteger generation = new AtomicInteger();
+        /**
+         * The list we have registered {@link ExtensionListListener}s on; changes with each Jenkins instance.
+         */
+        private static ExtensionList<SshCommandFactory> listening;
+
+        private final ExtensionList<SshCommandFactory> source;
+        private final List<Entry> entries = new ArrayList<>();
+        /**
+         * Factories that declare nothing and hence are asked about every command.
+         */
+        private final List<SshCommandFactory> undeclared = new ArrayList<>();
+        private final Map<String, List<SshCommandFactory>> byName = new HashMap<>();
+        private boolean hasPrefixes;
+
+        private DispatchTable(ExtensionList<SshCommandFactory> source) {
+            this.source = source;
+            for (SshCommandFactory f : source) {
+                Entry e = new Entry(f);
+                entries.add(e);
+                if (e.isUndeclared()) {
+                    undeclared.add(f);
+                }
+                hasPrefixes |= !e.prefixes.isEmpty();
+            }
+            for (Entry e : entries) {
+                for (String name : e.names) {
+                    byName.computeIfAbsent(name, this::scan);
+                }
+            }
+        }
+
+        static DispatchTable get() {
+            ExtensionList<SshCommandFactory> factories = SshCommandFactory.all();
+            DispatchTable t = current;
+            if (t != null && t.source == factories) {
+                return t;
+            }
+            synchronized (DispatchTable.class) {
+                if (listening != factories) {
+                    ExtensionListListener invalidate = new ExtensionListListener() {
+                        @Override
+                        public void onChange() {
+                            generation.incrementAndGet();
+                            current = null;
+                        }
+                    };
+                    factories.addListener(invalidate);
+                    ExtensionList.lookup(CLICommand.class).addListener(invalidate);
+                    listening = factories;
+                }
+                int gen = generation.get();
+                t = new DispatchTable(factories);
+                if (gen == generation.get()) {
+                    current = t;
+                }
+            }
+            return t;
+        }
+
+        List<SshCommandFactory> candidates(String name) {
+            List<SshCommandFactory> c = byName.get(name);
+            if (c != null) {
+                return c;
+            }
+            return hasPrefixes ? scan(name) : undeclared;
+        }
+
+        /**
+         * Lists the factories that may handle the given command, in extension order.
+         */
+        private List<SshCommandFactory> scan(String name) {
+            List<SshCommandFactory> result = new ArrayList<>();
+            for (Entry e : entries) {
+                if (e.isUndeclared() || e.matches(name)) {
+                    result.add(e.factory);
+                }
+            }
+            return result;
+        }
+
+        private static final class Entry {
+            final SshCommandFactory factory;
+            final Set<String> names;
+            final Set<String> prefixes;
+
+            Entry(SshCommandFactory factory) {
+                this.factory = factory;
+                this.names = Set.copyOf(factory.getCommandNames());
+                this.prefixes = Set.copyOf(factory.getCommandPrefixes());
+            }
+
+            boolean isUndeclared() {
+                return names.isEmpty() && prefixes.isEmpty();
+            }
+
+            boolean matches(String name) {
+                if (names.contains(name)) {
+                    return true;
+                }
+                for (String prefix : prefixes) {
+                    if (name.startsWith(prefix)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
 }
@@ -0,0 +1,217 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import jenkins.util.SystemProperties;
+import org.apache.sshd.common.io.IoAcceptor;
+import org.apache.sshd.common.io.IoServiceEventListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits how fast connections are accepted from a single address and from a single address range,
+ * before any expensive key exchange takes place.
+ *
+ * <p>
+ * Each address and each range has a token bucket. A connection takes a token, and is closed right away
+ * if there is none. Every such violation blocks the source for a while, twice as long as the previous time,
+ * so persistent offenders are kept out longer and longer, while legitimate bursts recover quickly.
+ *
+ * <p>
+ * The buckets live in a fixed number of independently locked, size-bounded LRU maps,
+ * so a flood from many addresses neither contends on a single lock nor exhausts memory.
+ */
+@Restricted(NoExternalUse.class)
+public final class ConnectionThrottle implements IoServiceEventListener {
+    private static final String PREFIX = ConnectionThrottle.class.getName();
+    private static final int STRIPES = 16;
+    private static final long INITIAL_PENALTY = TimeUnit.SECONDS.toNanos(1);
+
+    private final Limit perAddress;
+    private final Limit perRange;
+    private final int ipv4Prefix;
+    private final int ipv6Prefix;
+    private final long maxPenaltyNanos;
+    private final LongSupplier clock;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ConnectionThrottle(Limit perAddress, Limit perRange, int ipv4Prefix, int ipv6Prefix, long maxPenaltyNanos,
+                       int maxEntries, LongSupplier clock) {
+        this.perAddress = perAddress;
+        this.perRange = perRange;
+        this.ipv4Prefix = ipv4Prefix;
+        this.ipv6Prefix = ipv6Prefix;
+        this.maxPenaltyNanos = maxPenaltyNanos;
+        this.clock = clock;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxEntries / STRIPES));
+        }
+    }
+
+    /**
+     * Creates a throttle configured from system properties.
+     *
+     * @return null if no limit is configured, which is the default.
+     */
+    @CheckForNull
+    static ConnectionThrottle fromSystemProperties() {
+        Limit perAddress = new Limit(
+                SystemProperties.getInteger(PREFIX + ".perAddressRate", 0),
+                SystemProperties.getInteger(PREFIX + ".perAddressBurst", 10));
+        Limit perRange = new Limit(
+                SystemProperties.getInteger(PREFIX + ".perRangeRate", 0),
+                SystemProperties.getInteger(PREFIX + ".perRangeBurst", 50));
+        if (!perAddress.isEnabled() && !perRange.isEnabled()) {
+            return null;
+        }
+        return new ConnectionThrottle(perAddress, perRange,
+                SystemProperties.getInteger(PREFIX + ".ipv4Prefix", 24),
+                SystemProperties.getInteger(PREFIX + ".ipv6Prefix", 64),
+                TimeUnit.SECONDS.toNanos(SystemProperties.getLong(PREFIX + ".maxPenalty", 300L)),
+                SystemProperties.getInteger(PREFIX + ".maxEntries", 65536),
+                System::nanoTime);
+    }
+
+    @Override
+    public void connectionAccepted(IoAcceptor acceptor, SocketAddress local, SocketAddress remote, SocketAddress service)
+            throws IOException {
+        if (!(remote instanceof InetSocketAddress) || ((InetSocketAddress) remote).getAddress() == null) {
+            return;
+        }
+        InetAddress address = ((InetSocketAddress) remote).getAddress();
+        if (!tryAcquire(address)) {
+            SshdMetrics.get().connectionRejected();
+            LOGGER.log(Level.FINE, "Throttling SSH connection from {0}", address);
+            // MINA closes the connection when the listener throws
+            throw new IOException("Too many connections from " + address.getHostAddress());
+        }
+    }
+
+    /**
+     * Takes a token for a new connection from the given address.
+     *
+     * @return false if the connection should be refused.
+     */
+    boolean tryAcquire(InetAddress address) {
+        long now = clock.getAsLong();
+        if (perAddress.isEnabled() && !tryAcquire(address, perAddress, now)) {
+            return false;
+        }
+        if (perRange.isEnabled()) {
+            int prefix = address.getAddress().length == 4 ? ipv4Prefix : ipv6Prefix;
+            if (!tryAcquire(CidrRange.of(address, prefix), perRange, now)) {
+                if (perAddress.isEnabled()) {
+                    // the connection is refused, so it must not count against the address, only against its busy range
+                    refund(address, perAddress);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tryAcquire(Object key, Limit limit, long now) {
+        Stripe stripe = stripes[(key.hashCode() & 0x7FFFFFFF) % STRIPES];
+        synchronized (stripe) {
+            Bucket b = stripe.computeIfAbsent(key, k -> new Bucket(limit.burst, now));
+            return b.tryAcquire(limit, now, maxPenaltyNanos);
+        }
+    }
+
+    private void refund(Object key, Limit limit) {
+        Stripe stripe = stripes[(key.hashCode() & 0x7FFFFFFF) % STRIPES];
+        synchronized (stripe) {
+            Bucket b = stripe.get(key);
+            if (b != null) {
+                b.refund(limit);
+            }
+        }
+    }
+
+    static final class Limit {
+        /**
+         * Tokens added per second.
+         */
+        final int rate;
+        /**
+         * Maximum number of tokens, i.e. connections accepted in a quick succession.
+         */
+        final int burst;
+
+        Limit(int rate, int burst) {
+            this.rate = rate;
+            this.burst = Math.max(1, burst);
+        }
+
+        boolean isEnabled() {
+            return rate > 0;
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilled;
+        private long blockedUntil;
+        private long penalty;
+
+        Bucket(int tokens, long now) {
+            this.tokens = tokens;
+            this.refilled = now;
+            this.blockedUntil = now; // nanoTime may be negative, so 0 could be in the future
+        }
+
+        boolean tryAcquire(Limit limit, long now, long maxPenalty) {
+            if (now - blockedUntil < 0) {
+                return false;
+            }
+            tokens = Math.min(limit.burst, tokens + (now - refilled) * limit.rate / 1e9);
+            refilled = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                if (penalty > 0 && now - blockedUntil > penalty) {
+                    penalty = 0; // has behaved for as long as it was last blocked
+                }
+                return true;
+            }
+            penalty = penalty == 0 ? INITIAL_PENALTY : Math.min(maxPenalty, penalty * 2);
+            blockedUntil = now + penalty;
+            return false;
+        }
+
+        /**
+         * Gives back the token of a connection that was refused for another reason.
+         */
+        void refund(Limit limit) {
+            tokens = Math.min(limit.burst, tokens + 1);
+        }
+    }
+
+    /**
+     * Part of the bucket table, guarded by its own monitor.
+     */
+    private static final class Stripe extends LinkedHashMap<Object, Bucket> {
+        private final int maxEntries;
+
+        Stripe(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Bucket> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionThrottle.class.getName());
+}
@@ -0,0 +1,411 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.Timer;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.Mac;
+import org.apache.sshd.server.SshServer;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the ciphers and MACs of the SSH transport on a chosen JCE provider, such as SunJCE or BouncyCastle,
+ * rather than on whichever SSH Core picks.
+ *
+ * <p>
+ * AES in CTR, CBC and GCM modes and the HMACs can be pinned. Other algorithms, such as ChaCha20-Poly1305,
+ * which SSH Core implements itself, are left as they are.
+ * In {@link #AUTO} mode, each algorithm runs on the provider that processed bulk data the fastest,
+ * measured once in the background.
+ */
+final class CryptoProviders {
+    /**
+     * Picks the fastest provider of each algorithm.
+     */
+    static final String AUTO = "auto";
+
+    /**
+     * How long each provider and algorithm pair is measured in {@link #AUTO} mode.
+     */
+    private static final long AUTO_MEASUREMENT_MILLIS = 100;
+
+    /**
+     * Fastest provider by algorithm name, once measured.
+     */
+    @CheckForNull
+    private static volatile Map<String, String> fastest;
+
+    private static final AtomicBoolean measuring = new AtomicBoolean();
+
+    private CryptoProviders() {
+    }
+
+    /**
+     * Pins the ciphers to the given provider, or to the fastest one in {@link #AUTO} mode.
+     *
+     * @param provider provider name, {@link #AUTO}, or null to leave the choice to SSH Core
+     */
+    @NonNull
+    static List<NamedFactory<Cipher>> pinCiphers(@NonNull List<NamedFactory<Cipher>> factories, @CheckForNull String provider) {
+        return pin(factories, provider, CryptoProviders::pinCipher);
+    }
+
+    /**
+     * Pins the MACs to the given provider, or to the fastest one in {@link #AUTO} mode.
+     *
+     * @param provider provider name, {@link #AUTO}, or null to leave the choice to SSH Core
+     */
+    @NonNull
+    static List<NamedFactory<Mac>> pinMacs(@NonNull List<NamedFactory<Mac>> factories, @CheckForNull String provider) {
+        return pin(factories, provider, CryptoProviders::pinMac);
+    }
+
+    private static <T> List<NamedFactory<T>> pin(List<NamedFactory<T>> factories, @CheckForNull String provider, Pinner<T> pinner) {
+        if (provider == null) {
+            return factories;
+        }
+        Map<String, String> choices = null;
+        if (AUTO.equals(provider)) {
+            choices = fastest;
+            if (choices == null) {
+                // until measured, SSH Core chooses
+                measureInBackground();
+                return factories;
+            }
+        } else if (Security.getProvider(provider) == null) {
+            LOGGER.log(Level.WARNING, "No JCE provider {0} for SSH algorithms, using the defaults", provider);
+            return factories;
+        }
+        List<NamedFactory<T>> pinned = new ArrayList<>(factories.size());
+        for (NamedFactory<T> factory : factories) {
+            String name = choices != null ? choices.get(factory.getName()) : provider;
+            NamedFactory<T> p = name == null ? null : pinner.pin(factory, Security.getProvider(name));
+            pinned.add(p != null ? p : factory);
+        }
+        return pinned;
+    }
+
+    /**
+     * The providers able to run the given cipher, by name.
+     */
+    @NonNull
+    static Map<String, NamedFactory<Cipher>> cipherProviders(@NonNull NamedFactory<Cipher> factory) {
+        return providers(factory, CryptoProviders::pinCipher);
+    }
+
+    /**
+     * The providers able to run the given MAC, by name.
+     */
+    @NonNull
+    static Map<String, NamedFactory<Mac>> macProviders(@NonNull NamedFactory<Mac> factory) {
+        return providers(factory, CryptoProviders::pinMac);
+    }
+
+    private static <T> Map<String, NamedFactory<T>> providers(NamedFactory<T> factory, Pinner<T> pinner) {
+        Map<String, NamedFactory<T>> providers = new LinkedHashMap<>();
+        for (Provider provider : Security.getProviders()) {
+            NamedFactory<T> pinned = pinner.pin(factory, provider);
+            if (pinned != null) {
+                providers.put(provider.getName(), pinned);
+            }
+        }
+        return providers;
+    }
+
+    /**
+     * Names of the installed JCE providers.
+     */
+    @NonNull
+    static List<String> getProviderNames() {
+        return Arrays.stream(Security.getProviders()).map(Provider::getName).collect(Collectors.toList());
+    }
+
+    private static void measureInBackground() {
+        if (measuring.compareAndSet(false, true)) {
+            Timer.get().submit(() -> {
+                SshServer defaults = SshServer.setUpDefaultServer();
+                Map<String, String> choices = new LinkedHashMap<>();
+                for (NamedFactory<Cipher> factory : defaults.getCipherFactories()) {
+                    pickFastest(factory.getName(), cipherProviders(factory), AlgorithmThroughput::measureCipher, choices);
+                }
+                for (NamedFactory<Mac> factory : defaults.getMacFactories()) {
+                    pickFastest(factory.getName(), macProviders(factory), AlgorithmThroughput::measureMac, choices);
+                }
+                LOGGER.log(Level.FINE, "Fastest JCE providers for SSH algorithms: {0}", choices);
+                fastest = choices;
+                SSHD.get().reconfigure();
+            });
+        }
+    }
+
+    private static <T> void pickFastest(String name, Map<String, NamedFactory<T>> providers,
+                                        Measurement<NamedFactory<T>> measurement, Map<String, String> choices) {
+        double best = 0;
+        for (Map.Entry<String, NamedFactory<T>> e : providers.entrySet()) {
+            try {
+                double throughput = measurement.measure(e.getValue(), AUTO_MEASUREMENT_MILLIS);
+                if (throughput > best) {
+                    best = throughput;
+                    choices.put(name, e.getKey());
+                }
+            } catch (Exception x) {
+                LOGGER.log(Level.FINE, "Failed to measure " + name + " on " + e.getKey(), x);
+            }
+        }
+    }
+
+    @CheckForNull
+    private static NamedFactory<Cipher> pinCipher(NamedFactory<Cipher> factory, Provider provider) {
+        Cipher info = factory.create();
+        boolean gcm = info.getTransformation().contains("/GCM/");
+        if (info.getAuthenticationTagSize() > 0 && !gcm) {
+            return null;
+        }
+        try {
+            javax.crypto.Cipher.getInstance(info.getTransformation(), provider);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+        return named(factory.getName(), () -> new PinnedCipher(factory.create(), provider, gcm));
+    }
+
+    @CheckForNull
+    private static NamedFactory<Mac> pinMac(NamedFactory<Mac> factory, Provider provider) {
+        try {
+            javax.crypto.Mac.getInstance(factory.create().getAlgorithm(), provider);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+        return named(factory.getName(), () -> new PinnedMac(factory.create(), provider));
+    }
+
+    private static <T> NamedFactory<T> named(String name, Supplier<T> supplier) {
+        return new NamedFactory<T>() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public T create() {
+                return supplier.get();
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * AES on a given provider, sized like the SSH Core implementation it replaces.
+     * GCM follows RFC 5647: the last 8 bytes of the nonce count the packets.
+     */
+    private static final class PinnedCipher implements Cipher {
+        private final Cipher info;
+        private final Provider provider;
+        private final boolean gcm;
+        private javax.crypto.Cipher cipher;
+        private int opmode;
+        private SecretKeySpec key;
+        private byte[] iv;
+        private boolean initialized;
+
+        PinnedCipher(Cipher info, Provider provider, boolean gcm) {
+            this.info = info;
+            this.provider = provider;
+            this.gcm = gcm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return info.getAlgorithm();
+        }
+
+        @Override
+        public int getKeySize() {
+            return info.getKeySize();
+        }
+
+        @Override
+        public String getTransformation() {
+            return info.getTransformation();
+        }
+
+        @Override
+        public int getIVSize() {
+            return info.getIVSize();
+        }
+
+        @Override
+        public int getAuthenticationTagSize() {
+            return info.getAuthenticationTagSize();
+        }
+
+        @Override
+        public int getKdfSize() {
+            return info.getKdfSize();
+        }
+
+        @Override
+        public int getCipherBlockSize() {
+            return info.getCipherBlockSize();
+        }
+
+        @Override
+        public void init(Mode mode, byte[] key, byte[] iv) throws Exception {
+            this.opmode = mode == Mode.Encrypt ? javax.crypto.Cipher.ENCRYPT_MODE : javax.crypto.Cipher.DECRYPT_MODE;
+            this.key = new SecretKeySpec(key, 0, getKdfSize(), getAlgorithm());
+            this.iv = Arrays.copyOf(iv, getIVSize());
+            cipher = javax.crypto.Cipher.getInstance(getTransformation(), provider);
+            if (!gcm) {
+                cipher.init(opmode, this.key, new IvParameterSpec(this.iv));
+            }
+            initialized = false;
+        }
+
+        @Override
+        public void updateAAD(byte[] data, int offset, int length) throws Exception {
+            if (!gcm) {
+                throw new UnsupportedOperationException(getTransformation() + " does not support AAD");
+            }
+            initPacket();
+            cipher.updateAAD(data, offset, length);
+        }
+
+        @Override
+        public void update(byte[] input, int inputOffset, int inputLen) throws Exception {
+            if (!gcm) {
+                cipher.update(input, inputOffset, inputLen, input, inputOffset);
+                return;
+            }
+            initPacket();
+            int length = opmode == javax.crypto.Cipher.DECRYPT_MODE ? inputLen + getAuthenticationTagSize() : inputLen;
+            cipher.doFinal(input, inputOffset, length, input, inputOffset);
+            for (int i = iv.length - 1; i >= iv.length - Long.BYTES; i--) {
+                if (++iv[i] != 0) {
+                    break;
+                }
+            }
+            initialized = false;
+        }
+
+        private void initPacket() throws GeneralSecurityException {
+            if (!initialized) {
+                cipher.init(opmode, key, new GCMParameterSpec(getAuthenticationTagSize() * Byte.SIZE, iv));
+                initialized = true;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getTransformation() + "[" + provider.getName() + "]";
+        }
+    }
+
+    /**
+     * An HMAC on a given provider, truncated like the SSH Core implementation it replaces.
+     */
+    private static final class PinnedMac implements Mac {
+        private final Mac info;
+        private final Provider provider;
+        private final byte[] uint = new byte[Integer.BYTES];
+        private javax.crypto.Mac mac;
+        private byte[] tmp;
+
+        PinnedMac(Mac info, Provider provider) {
+            this.info = info;
+            this.provider = provider;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return info.getAlgorithm();
+        }
+
+        @Override
+        public int getBlockSize() {
+            return info.getBlockSize();
+        }
+
+        @Override
+        public int getDefaultBlockSize() {
+            return info.getDefaultBlockSize();
+        }
+
+        @Override
+        public boolean isEncryptThenMac() {
+            return info.isEncryptThenMac();
+        }
+
+        @Override
+        public void init(byte[] key) throws Exception {
+            if (key.length > getDefaultBlockSize()) {
+                key = Arrays.copyOf(key, getDefaultBlockSize());
+            }
+            mac = javax.crypto.Mac.getInstance(getAlgorithm(), provider);
+            mac.init(new SecretKeySpec(key, getAlgorithm()));
+            tmp = new byte[mac.getMacLength()];
+        }
+
+        @Override
+        public void update(byte[] buf, int start, int len) {
+            mac.update(buf, start, len);
+        }
+
+        @Override
+        public void updateUInt(long i) {
+            uint[0] = (byte) (i >>> 24);
+            uint[1] = (byte) (i >>> 16);
+            uint[2] = (byte) (i >>> 8);
+            uint[3] = (byte) i;
+            mac.update(uint, 0, uint.length);
+        }
+
+        @Override
+        public void doFinal(byte[] buf, int offset) throws Exception {
+            if (getBlockSize() < tmp.length) {
+                mac.doFinal(tmp, 0);
+                System.arraycopy(tmp, 0, buf, offset, getBlockSize());
+            } else {
+                mac.doFinal(buf, offset);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getAlgorithm() + "[" + provider.getName() + "]";
+        }
+    }
+
+    @FunctionalInterface
+    private interface Pinner<T> {
+        @CheckForNull
+        NamedFactory<T> pin(NamedFactory<T> factory, Provider provider);
+    }
+
+    @FunctionalInterface
+    interface Measurement<T> {
+        double measure(T factory, long millis) throws Exception;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(CryptoProviders.class.getName());
+}
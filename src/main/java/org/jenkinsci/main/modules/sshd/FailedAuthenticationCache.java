@@ -0,0 +1,108 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.User;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.main.modules.cli.auth.ssh.KeyFingerprint;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers recent (user, key) combinations that failed to authenticate,
+ * so that a client retrying them is rejected without loading the user again.
+ *
+ * <p>
+ * The cache is a fixed-size, direct-mapped table: each combination has exactly one slot, and a new failure simply
+ * replaces whatever was there. Memory use is therefore constant no matter how many distinct user names
+ * a scanner tries, at the price of occasionally forgetting a failure early, which only costs a regular lookup.
+ *
+ * <p>
+ * Entries expire after a while, and all entries of a user are dropped whenever that user is saved,
+ * so adding a key takes effect immediately.
+ *
+ * @see AuthenticationCacheInvalidator
+ */
+@Restricted(NoExternalUse.class)
+public final class FailedAuthenticationCache {
+    private static final FailedAuthenticationCache INSTANCE = new FailedAuthenticationCache(
+            SystemProperties.getInteger(FailedAuthenticationCache.class.getName() + ".size", 4096),
+            TimeUnit.SECONDS.toNanos(SystemProperties.getLong(FailedAuthenticationCache.class.getName() + ".ttl", 60L)),
+            System::nanoTime);
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    FailedAuthenticationCache(int size, long ttlNanos, LongSupplier clock) {
+        // round up to a power of two so that the slot is a simple mask of the hash
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    @NonNull
+    public static FailedAuthenticationCache get() {
+        return INSTANCE;
+    }
+
+    private boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * Checks if this user failed to authenticate with this key recently.
+     *
+     * @param userKey the user name as normalized by {@link User#idStrategy()}
+     */
+    boolean contains(@NonNull String userKey, @NonNull KeyFingerprint fingerprint) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Entry e = slots.get(indexOf(userKey, fingerprint));
+        return e != null && e.userKey.equals(userKey) && e.fingerprint.equals(fingerprint)
+                && clock.getAsLong() - e.expires < 0;
+    }
+
+    void add(@NonNull String userKey, @NonNull KeyFingerprint fingerprint) {
+        if (isEnabled()) {
+            slots.set(indexOf(userKey, fingerprint), new Entry(userKey, fingerprint, clock.getAsLong() + ttlNanos));
+        }
+    }
+
+    /**
+     * Forgets all failures of the given user.
+     */
+    void invalidate(@NonNull String userKey) {
+        for (int i = 0; i < slots.length(); i++) {
+            Entry e = slots.get(i);
+            if (e != null && e.userKey.equals(userKey)) {
+                slots.compareAndSet(i, e, null);
+            }
+        }
+    }
+
+    private int indexOf(String userKey, KeyFingerprint fingerprint) {
+        int h = Objects.hash(userKey, fingerprint);
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static final class Entry {
+        final String userKey;
+        final KeyFingerprint fingerprint;
+        final long expires;
+
+        Entry(String userKey, KeyFingerprint fingerprint, long expires) {
+            this.userKey = userKey;
+            this.fingerprint = fingerprint;
+            this.expires = expires;
+        }
+    }
+}
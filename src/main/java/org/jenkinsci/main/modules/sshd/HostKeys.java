@@ -0,0 +1,175 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.security.ConfidentialKey;
+import jenkins.util.SystemProperties;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.util.security.SecurityUtils;
+import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Host keys of the SSH server.
+ *
+ * <p>
+ * The RSA key of the {@link InstanceIdentity} is always offered. Ed25519 and ECDSA keys, whose signatures are
+ * much cheaper to compute, can be added ahead of it with the {@code algorithms} system property.
+ * They are generated on first use and kept in the {@link jenkins.security.ConfidentialStore},
+ * next to the instance identity, so that clients see the same keys after a restart.
+ *
+ * <p>
+ * The keys are loaded once when the server starts, rather than for every handshake.
+ */
+@Restricted(NoExternalUse.class)
+public final class HostKeys {
+    static final String ED25519 = "ed25519";
+    static final String ECDSA = "ecdsa";
+
+    private HostKeys() {
+    }
+
+    /**
+     * Loads the host keys, generating the additional ones if needed, in order of preference.
+     */
+    @NonNull
+    static List<KeyPair> load() {
+        List<KeyPair> keys = new ArrayList<>();
+        for (String algorithm : getAdditionalAlgorithms()) {
+            KeyPair key = loadAdditional(algorithm);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        InstanceIdentity identity = InstanceIdentity.get();
+        keys.add(new KeyPair(identity.getPublic(), identity.getPrivate()));
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Fingerprints of the given keys, in the same order, as OpenSSH shows them.
+     */
+    @NonNull
+    static List<String> fingerprints(@NonNull List<KeyPair> keys) {
+        return keys.stream().map(k -> KeyUtils.getFingerPrint(k.getPublic())).collect(Collectors.toList());
+    }
+
+    private static List<String> getAdditionalAlgorithms() {
+        String value = SystemProperties.getString(HostKeys.class.getName() + ".algorithms", "");
+        return Arrays.stream(value.split(","))
+                .map(s -> s.trim().toLowerCase(Locale.ROOT))
+                .filter(s -> !s.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @CheckForNull
+    private static KeyPair loadAdditional(String algorithm) {
+        try {
+            switch (algorithm) {
+                case ED25519:
+                    if (!SecurityUtils.isEDDSACurveSupported()) {
+                        LOGGER.warning("Ed25519 host keys are not supported by this JVM, only offering the other host keys");
+                        return null;
+                    }
+                    return new StoredKeyPair(ED25519, SecurityUtils.EDDSA).getOrCreate(null);
+                case ECDSA:
+                    return new StoredKeyPair(ECDSA, KeyUtils.EC_ALGORITHM).getOrCreate(new ECGenParameterSpec("secp256r1"));
+                default:
+                    LOGGER.log(Level.WARNING, "Ignoring unknown SSH host key algorithm {0}, expected {1} or {2}",
+                            new Object[]{ algorithm, ED25519, ECDSA });
+                    return null;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the " + algorithm + " SSH host key, only offering the other host keys", e);
+            return null;
+        }
+    }
+
+    /**
+     * A key pair persisted in the {@link jenkins.security.ConfidentialStore}.
+     */
+    private static final class StoredKeyPair extends ConfidentialKey {
+        private final String keyAlgorithm;
+
+        StoredKeyPair(String name, String keyAlgorithm) {
+            super(HostKeys.class.getName() + "." + name);
+            this.keyAlgorithm = keyAlgorithm;
+        }
+
+        KeyPair getOrCreate(@CheckForNull AlgorithmParameterSpec spec) throws IOException, GeneralSecurityException {
+            synchronized (StoredKeyPair.class) {
+                byte[] payload = load();
+                if (payload != null) {
+                    return decode(payload);
+                }
+                KeyPairGenerator generator = SecurityUtils.getKeyPairGenerator(keyAlgorithm);
+                if (spec != null) {
+                    generator.initialize(spec);
+                }
+                KeyPair key = generator.generateKeyPair();
+                store(encode(key));
+                LOGGER.log(Level.INFO, "Generated SSH host key {0}", KeyUtils.getFingerPrint(key.getPublic()));
+                return key;
+            }
+        }
+
+        private static byte[] encode(KeyPair key) throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(buf)) {
+                byte[] pub = key.getPublic().getEncoded();
+                byte[] priv = key.getPrivate().getEncoded();
+                out.writeInt(pub.length);
+                out.write(pub);
+                out.writeInt(priv.length);
+                out.write(priv);
+            }
+            return buf.toByteArray();
+        }
+
+        private KeyPair decode(byte[] payload) throws IOException, GeneralSecurityException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+                byte[] pub = readBytes(in, payload.length);
+                byte[] priv = readBytes(in, payload.length);
+                KeyFactory factory = SecurityUtils.getKeyFactory(keyAlgorithm);
+                return new KeyPair(factory.generatePublic(new X509EncodedKeySpec(pub)),
+                        factory.generatePrivate(new PKCS8EncodedKeySpec(priv)));
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in, int max) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Corrupted SSH host key");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(HostKeys.class.getName());
+}
@@ -0,0 +1,176 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.CloseProofOutputStream;
+import hudson.cli.CLICommand;
+import hudson.model.Item;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.shell.ShellFactory;
+import org.springframework.security.core.Authentication;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Interactive shell running {@link CLICommand}s, one per line, as the user of the session.
+ *
+ * <p>
+ * Unlike a series of SSH commands, the shell keeps its channel and thread for the whole session,
+ * and resolves the command names and the items offered for tab completion only once.
+ * Commands get no input, since that is where the shell reads the next command line from.
+ *
+ * @see SSHD#isAllowShell()
+ */
+final class JenkinsShell extends AsynchronousCommand {
+    static final ShellFactory FACTORY = channel -> new JenkinsShell();
+
+    private static final String PROMPT = "jenkins> ";
+    private static final Set<String> BUILTINS = Set.of("exit", "quit", "history");
+    private static final int HISTORY_SIZE = SystemProperties.getInteger(JenkinsShell.class.getName() + ".historySize", 500);
+
+    private Set<String> commandNames;
+    private List<String> itemNames;
+
+    JenkinsShell() {
+        super(new SshCommandFactory.CommandLine("shell"));
+    }
+
+    @Override
+    protected int runCommand() throws Exception {
+        // a client with a terminal sends keys as they are typed and expects us to echo them
+        boolean interactive = getEnvironment().getEnv().containsKey(Environment.ENV_TERM);
+        //TODO: Consider switching to UTF-8
+        Charset charset = Charset.defaultCharset();
+        // the channel outlives the commands, so they must not close it
+        OutputStream out = new CloseProofOutputStream(interactive ? new CrLfOutputStream(getOutputStream()) : getOutputStream());
+        OutputStream err = new CloseProofOutputStream(interactive ? new CrLfOutputStream(getErrorStream()) : getErrorStream());
+        PrintStream stdout = new PrintStream(out, true, charset.toString());
+        PrintStream stderr = new PrintStream(err, true, charset.toString());
+
+        commandNames = new TreeSet<>(BUILTINS);
+        for (CLICommand c : CLICommand.all()) {
+            commandNames.add(c.getName());
+        }
+
+        LineEditor editor = new LineEditor(new InputStreamReader(getInputStream(), charset), getOutputStream(), charset,
+                interactive, this::candidates, HISTORY_SIZE);
+        if (interactive) {
+            stdout.println("Type 'help' to list the commands, and 'exit' to leave.");
+        }
+        int exitCode = 0;
+        String line;
+        while ((line = editor.readLine(PROMPT)) != null) {
+            CommandLine cmd = new CommandLine(line);
+            if (cmd.isEmpty()) {
+                continue;
+            }
+            switch (cmd.get(0)) {
+                case "exit":
+                case "quit":
+                    return exitCode;
+                case "history":
+                    List<String> history = editor.getHistory();
+                    for (int i = 0; i < history.size(); i++) {
+                        stdout.printf("%5d  %s%n", i + 1, history.get(i));
+                    }
+                    exitCode = 0;
+                    break;
+                default:
+                    exitCode = run(cmd, stdout, stderr);
+            }
+        }
+        return exitCode;
+    }
+
+    private int run(CommandLine cmd, PrintStream stdout, PrintStream stderr) {
+        long start = System.nanoTime();
+        String name = cmd.get(0);
+        CLICommand c = CLICommand.clone(name);
+        if (c == null) {
+            stderr.println("Unknown command: " + name);
+            return 255;
+        }
+        // cheap, but fails if the user has been deleted or disabled since the last command
+        Authentication auth = getCurrentAuthentication();
+        if (auth != null) {
+            c.setTransportAuth2(auth);
+        }
+        int exitCode = c.main(cmd.subList(1, cmd.size()), Locale.getDefault(), InputStream.nullInputStream(), stdout, stderr);
+        stdout.flush();
+        stderr.flush();
+        SshdMetrics.get().commandCompleted(name, System.nanoTime() - start);
+        return exitCode;
+    }
+
+    /**
+     * Completes command names first, and then names of items, as most commands take a job or a view.
+     */
+    private Collection<String> candidates(String before) {
+        if (before.isBlank()) {
+            return commandNames;
+        }
+        if (itemNames == null) {
+            // as the user, see AsynchronousCommand.run()
+            List<String> names = new ArrayList<>();
+            for (Item item : Jenkins.get().allItems()) {
+                names.add(item.getFullName());
+            }
+            itemNames = names;
+        }
+        return itemNames;
+    }
+
+    /**
+     * Translates line feeds into what a terminal in raw mode needs to start a new line.
+     */
+    static final class CrLfOutputStream extends FilterOutputStream {
+        private int last;
+
+        CrLfOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == '\n' && last != '\r') {
+                out.write('\r');
+            }
+            out.write(b);
+            last = b;
+        }
+
+        /**
+         * Writes the runs between line feeds in bulk, rather than byte by byte like {@link FilterOutputStream}.
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n' && (i > off ? b[i - 1] : last) != '\r') {
+                    out.write(b, start, i - start);
+                    out.write('\r');
+                    start = i; // the line feed goes with the next run
+                }
+            }
+            out.write(b, start, end - start);
+            if (len > 0) {
+                last = b[end - 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with fixed, exponentially growing buckets.
+ *
+ * <p>
+ * Each bucket is a {@link LongAdder}, so concurrent recording threads rarely contend,
+ * and recording never allocates. The price is that quantiles are only known to within a factor of two.
+ */
+@Restricted(NoExternalUse.class)
+public final class LatencyHistogram {
+    private static final long SMALLEST_BOUND = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Inclusive upper bounds of the buckets in nanoseconds, from 100µs doubling up to about 52s.
+     * One more bucket collects everything above.
+     */
+    private static final long[] BOUNDS = new long[20];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS[i] = SMALLEST_BOUND << i;
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        buckets[indexOf(nanos)].increment();
+        sum.add(Math.max(0, nanos));
+    }
+
+    static int indexOf(long nanos) {
+        if (nanos <= SMALLEST_BOUND) {
+            return 0;
+        }
+        return Math.min(BOUNDS.length, 64 - Long.numberOfLeadingZeros((nanos - 1) / SMALLEST_BOUND));
+    }
+
+    /**
+     * Upper bounds of the buckets in nanoseconds, not including the last, unbounded one.
+     */
+    @NonNull
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Copies the current counts.
+     * Recording may go on concurrently, so the copy is not necessarily consistent to the last event.
+     */
+    @NonNull
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, sum.sum());
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+
+        Snapshot(long[] counts, long sumNanos) {
+            this.counts = counts;
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.count = count;
+            this.sumNanos = sumNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+
+        /**
+         * Number of recorded durations per bucket, with one more element than {@link #getBounds()}.
+         */
+        @NonNull
+        public long[] getBucketCounts() {
+            return counts.clone();
+        }
+
+        /**
+         * Estimates a quantile as the upper bound of the bucket it falls into.
+         *
+         * @param q between 0 and 1
+         * @return the estimate in nanoseconds, 0 if nothing was recorded,
+         *      or {@link Long#MAX_VALUE} if the quantile is above the largest bound.
+         */
+        public long getQuantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return BOUNDS[i];
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal line editor for a terminal in raw mode, as a client with a PTY sends it every key as it is typed.
+ *
+ * <p>
+ * It echoes what is typed, and supports backspace, {@code Ctrl-U} to clear the line, {@code Ctrl-C} to abandon it,
+ * {@code Ctrl-D} on an empty line to quit, the up and down arrows to browse the history, and tab completion.
+ * The cursor is always at the end of the line.
+ *
+ * <p>
+ * Without echo, for clients that do not have a terminal, lines are read as they come and nothing is written back.
+ */
+final class LineEditor {
+    private static final int CTRL_C = 3;
+    private static final int CTRL_D = 4;
+    private static final int BACKSPACE = 8;
+    private static final int CTRL_U = 21;
+    private static final int ESC = 27;
+    private static final int DELETE = 127;
+
+    /**
+     * Candidates listed at most when a completion is ambiguous.
+     */
+    private static final int MAX_LISTED = 100;
+
+    /**
+     * Provides completions for the word being typed.
+     */
+    interface Completer {
+        /**
+         * @param before the line before the word being completed, so empty for the first word.
+         * @return all the words possible at this position, which the editor filters by what was typed.
+         */
+        @NonNull
+        Collection<String> candidates(@NonNull String before);
+    }
+
+    private final Reader in;
+    private final OutputStream out;
+    private final Charset charset;
+    private final boolean echo;
+    private final Completer completer;
+    private final int maxHistory;
+    private final List<String> history = new ArrayList<>();
+    private boolean lastWasCr;
+
+    LineEditor(Reader in, OutputStream out, Charset charset, boolean echo, Completer completer, int maxHistory) {
+        this.in = in;
+        this.out = out;
+        this.charset = charset;
+        this.echo = echo;
+        this.completer = completer;
+        this.maxHistory = Math.max(1, maxHistory);
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return null at the end of the input.
+     */
+    @CheckForNull
+    String readLine(String prompt) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int historyIndex = history.size();
+        String edited = ""; // the line being typed, while browsing the history
+        write(prompt);
+        while (true) {
+            int c = in.read();
+            if (c != '\n') {
+                lastWasCr = false;
+            }
+            switch (c) {
+                case -1:
+                    return line.length() == 0 ? null : line.toString();
+                case '\n':
+                    if (lastWasCr) {
+                        lastWasCr = false;
+                        continue; // second half of CR LF
+                    }
+                    return accept(line);
+                case '\r':
+                    lastWasCr = true;
+                    return accept(line);
+                case CTRL_C:
+                    write("^C\r\n" + prompt);
+                    line.setLength(0);
+                    historyIndex = history.size();
+                    break;
+                case CTRL_D:
+                    if (line.length() == 0) {
+                        write("\r\n");
+                        return null;
+                    }
+                    break;
+                case BACKSPACE:
+                case DELETE:
+                    if (line.length() > 0) {
+                        line.setLength(line.length() - 1);
+                        write("\b \b");
+                    }
+                    break;
+                case CTRL_U:
+                    replace(prompt, line, "");
+                    break;
+                case '\t':
+                    complete(prompt, line);
+                    break;
+                case ESC:
+                    if (in.read() != '[') {
+                        break;
+                    }
+                    int key = in.read();
+                    if (key == 'A' && historyIndex > 0) {
+                        if (historyIndex == history.size()) {
+                            edited = line.toString();
+                        }
+                        replace(prompt, line, history.get(--historyIndex));
+                    } else if (key == 'B' && historyIndex < history.size()) {
+                        historyIndex++;
+                        replace(prompt, line, historyIndex == history.size() ? edited : history.get(historyIndex));
+                    }
+                    break;
+                default:
+                    if (c >= ' ') {
+                        line.append((char) c);
+                        write(String.valueOf((char) c));
+                    }
+            }
+        }
+    }
+
+    private String accept(StringBuilder line) throws IOException {
+        write("\r\n");
+        String result = line.toString();
+        if (!result.isBlank() && (history.isEmpty() || !history.get(history.size() - 1).equals(result))) {
+            if (history.size() == maxHistory) {
+                history.remove(0);
+            }
+            history.add(result);
+        }
+        return result;
+    }
+
+    /**
+     * Previously entered lines, oldest first.
+     */
+    @NonNull
+    List<String> getHistory() {
+        return List.copyOf(history);
+    }
+
+    private void complete(String prompt, StringBuilder line) throws IOException {
+        int start = line.lastIndexOf(" ") + 1;
+        String prefix = line.substring(start);
+        List<String> matches = completer.candidates(line.substring(0, start)).stream()
+                .filter(s -> s.startsWith(prefix))
+                .sorted()
+                .distinct()
+                .collect(Collectors.toList());
+        if (matches.isEmpty()) {
+            write("\u0007");
+            return;
+        }
+        if (matches.size() == 1) {
+            String completion = matches.get(0).substring(prefix.length()) + " ";
+            line.append(completion);
+            write(completion);
+            return;
+        }
+        String common = commonPrefix(matches);
+        if (common.length() > prefix.length()) {
+            String completion = common.substring(prefix.length());
+            line.append(completion);
+            write(completion);
+            return;
+        }
+        StringBuilder listing = new StringBuilder("\r\n");
+        listing.append(String.join("  ", matches.subList(0, Math.min(MAX_LISTED, matches.size()))));
+        if (matches.size() > MAX_LISTED) {
+            listing.append("  ...");
+        }
+        write(listing.append("\r\n").append(prompt).append(line).toString());
+    }
+
+    static String commonPrefix(List<String> words) {
+        String first = words.get(0);
+        int length = first.length();
+        for (String w : words) {
+            length = Math.min(length, w.length());
+            for (int i = 0; i < length; i++) {
+                if (w.charAt(i) != first.charAt(i)) {
+                    length = i;
+                    break;
+                }
+            }
+        }
+        return first.substring(0, length);
+    }
+
+    /**
+     * Replaces the whole line, redrawing it after the prompt and clearing whatever was left of the old one.
+     */
+    private void replace(String prompt, StringBuilder line, String text) throws IOException {
+        line.setLength(0);
+        line.append(text);
+        write("\r" + prompt + text + "\u001b[K");
+    }
+
+    private void write(String s) throws IOException {
+        if (echo && !s.isEmpty()) {
+            out.write(s.getBytes(charset));
+            out.flush();
+        }
+    }
+}
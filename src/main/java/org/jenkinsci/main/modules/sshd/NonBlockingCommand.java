@@ -0,0 +1,342 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import org.apache.sshd.common.io.IoInputStream;
+import org.apache.sshd.common.io.IoOutputStream;
+import org.apache.sshd.common.io.IoReadFuture;
+import org.apache.sshd.common.io.IoWriteFuture;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.AsyncCommand;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.session.ServerSessionAware;
+import org.jenkinsci.main.modules.sshd.SshCommandFactory.CommandLine;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Partial {@link org.apache.sshd.server.command.Command} implementation that does not hold a thread while it runs.
+ *
+ * <p>
+ * Unlike {@link AsynchronousCommand}, {@link #runCommand()} returns as soon as the work is set up, and the command
+ * completes when the returned {@link CompletionStage} does. Input and output go through {@link #read()},
+ * {@link #write(byte[])} and {@link #writeError(byte[])}, which complete once the channel has accepted the data,
+ * so a command producing output faster than the client consumes it is naturally held back by the SSH window.
+ *
+ * <p>
+ * Continuations run on SSH I/O threads, so they must not block and run without the user's authentication.
+ * Anything that blocks or needs to access Jenkins on behalf of the user goes through {@link #supplyBlocking(Callable)}.
+ *
+ * <p>
+ * {@link SshCommandFactory#create} may return either kind of command, so existing {@link AsynchronousCommand}s
+ * keep working unchanged.
+ */
+public abstract class NonBlockingCommand implements AsyncCommand, ServerSessionAware {
+    /**
+     * Maximum number of bytes returned by a single {@link #read()}.
+     */
+    private static final int READ_SIZE = 8192;
+
+    private final CommandLine cmdLine;
+    private IoInputStream in;
+    private IoOutputStream out;
+    private IoOutputStream err;
+    private ExitCallback callback;
+    private ServerSession session;
+    private Environment environment;
+    private Authentication authentication;
+    private long startNanos;
+
+    /**
+     * Completes once everything written so far has been accepted by the channel.
+     * Each stream only allows one pending write, so writes are chained.
+     */
+    private CompletableFuture<Void> lastOut = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> lastErr = CompletableFuture.completedFuture(null);
+
+    private volatile CompletionStage<Integer> result;
+    private volatile boolean destroyed;
+
+    protected NonBlockingCommand(CommandLine cmdLine) {
+        this.cmdLine = cmdLine;
+    }
+
+    public CommandLine getCmdLine() {
+        return cmdLine;
+    }
+
+    public ServerSession getSession() {
+        return session;
+    }
+
+    @Override
+    public void setSession(ServerSession session) {
+        this.session = session;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    @Override
+    public void setIoInputStream(IoInputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void setIoOutputStream(IoOutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void setIoErrorStream(IoOutputStream err) {
+        this.err = err;
+    }
+
+    /**
+     * Not used, since the channel hands us the asynchronous streams instead.
+     */
+    @Override
+    public void setInputStream(InputStream in) {
+    }
+
+    @Override
+    public void setOutputStream(OutputStream out) {
+    }
+
+    @Override
+    public void setErrorStream(OutputStream err) {
+    }
+
+    @Override
+    public void setExitCallback(ExitCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * The user running this command, or null if security is disabled.
+     *
+     * @throws AuthenticationException if the user has been deleted or disabled since the session was authenticated.
+     */
+    @CheckForNull
+    protected User getCurrentUser() {
+        SessionIdentity identity = SessionIdentity.resolve(getSession());
+        return identity == null ? null : identity.getUser();
+    }
+
+    /**
+     * Starts the command. It is over once the returned stage completes with the exit code.
+     *
+     * <p>
+     * This is called on an SSH I/O thread with the user's authentication, and must not block.
+     */
+    @NonNull
+    protected abstract CompletionStage<Integer> runCommand() throws Exception;
+
+    @Override
+    public void start(ChannelSession channel, Environment env) throws IOException {
+        this.environment = env;
+        this.startNanos = System.nanoTime();
+        CompletionStage<Integer> stage;
+        try {
+            SessionIdentity identity = SessionIdentity.resolve(getSession());
+            authentication = identity != null ? identity.getAuthentication() : Jenkins.ANONYMOUS2;
+            try (ACLContext ctx = ACL.as2(authentication)) {
+                stage = runCommand();
+            }
+        } catch (Exception e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+        result = stage;
+        stage.whenComplete(this::exit);
+    }
+
+    private void exit(Integer exitCode, Throwable failure) {
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure == null) {
+            exitAfterOutput(exitCode != null ? exitCode : 0, null);
+        } else if (destroyed) {
+            LOGGER.log(Level.FINE, "SSH command was aborted: " + cmdLine.getSingleLine(), failure);
+        } else if (failure instanceof AuthenticationException) {
+            String message = "Authentication is no longer valid: " + failure.getMessage();
+            writeError(message + "\n");
+            exitAfterOutput(255, message);
+        } else if (failure instanceof RejectedExecutionException) {
+            String message = "Too many concurrent SSH commands, try again later";
+            writeError(message + "\n");
+            exitAfterOutput(AsynchronousCommand.BUSY_EXIT_CODE, message);
+        } else {
+            // report the cause of the death to the client
+            StringWriter trace = new StringWriter();
+            failure.printStackTrace(new PrintWriter(trace));
+            writeError(trace.toString());
+            exitAfterOutput(255, failure.getMessage());
+        }
+    }
+
+    private void exitAfterOutput(int exitCode, @CheckForNull String message) {
+        CompletableFuture<Void> pending;
+        synchronized (this) {
+            pending = CompletableFuture.allOf(lastOut.exceptionally(x -> null), lastErr.exceptionally(x -> null));
+        }
+        pending.whenComplete((v, x) -> {
+            SshdMetrics.get().commandCompleted(cmdLine.isEmpty() ? "" : cmdLine.get(0), System.nanoTime() - startNanos);
+            if (message == null) {
+                callback.onExit(exitCode);
+            } else {
+                callback.onExit(exitCode, message);
+            }
+        });
+    }
+
+    /**
+     * Reads the next chunk of input.
+     * Only one read may be pending at a time.
+     *
+     * @return a stage completing with the bytes read, or with null at the end of input.
+     */
+    @NonNull
+    protected final CompletionStage<byte[]> read() {
+        CompletableFuture<byte[]> f = new CompletableFuture<>();
+        Buffer buffer = new ByteArrayBuffer(READ_SIZE);
+        try {
+            in.read(buffer).addListener((IoReadFuture r) -> {
+                Throwable t = r.getException();
+                if (t instanceof EOFException || t == null && r.getRead() < 0) {
+                    f.complete(null);
+                } else if (t != null) {
+                    f.completeExceptionally(t);
+                } else {
+                    byte[] bytes = new byte[buffer.available()];
+                    buffer.getRawBytes(bytes);
+                    SshdMetrics.get().bytesIn(session, bytes.length);
+                    f.complete(bytes);
+                }
+            });
+        } catch (RuntimeException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    /**
+     * Writes to the standard output of the command.
+     *
+     * @return a stage completing once the channel has accepted the data.
+     */
+    @NonNull
+    protected final CompletionStage<Void> write(@NonNull byte[] bytes) {
+        synchronized (this) {
+            return lastOut = lastOut.thenCompose(v -> doWrite(out, bytes));
+        }
+    }
+
+    @NonNull
+    protected final CompletionStage<Void> write(@NonNull String s) {
+        //TODO: Consider switching to UTF-8
+        return write(s.getBytes(Charset.defaultCharset()));
+    }
+
+    /**
+     * Writes to the standard error of the command.
+     *
+     * @return a stage completing once the channel has accepted the data.
+     */
+    @NonNull
+    protected final CompletionStage<Void> writeError(@NonNull byte[] bytes) {
+        synchronized (this) {
+            return lastErr = lastErr.thenCompose(v -> doWrite(err, bytes));
+        }
+    }
+
+    @NonNull
+    protected final CompletionStage<Void> writeError(@NonNull String s) {
+        //TODO: Consider switching to UTF-8
+        return writeError(s.getBytes(Charset.defaultCharset()));
+    }
+
+    private CompletableFuture<Void> doWrite(IoOutputStream stream, byte[] bytes) {
+        SshdMetrics.get().bytesOut(session, bytes.length);
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        try {
+            stream.writeBuffer(new ByteArrayBuffer(bytes)).addListener((IoWriteFuture w) -> {
+                if (w.isWritten()) {
+                    f.complete(null);
+                } else {
+                    Throwable t = w.getException();
+                    f.completeExceptionally(t != null ? t : new IOException("Failed to write to the channel"));
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    /**
+     * Runs blocking code on the {@link CommandExecutor}, with the user's authentication.
+     * The stage fails with {@link RejectedExecutionException} if the executor is saturated,
+     * which the command reports with {@link AsynchronousCommand#BUSY_EXIT_CODE} unless it handles it.
+     */
+    @NonNull
+    protected final <T> CompletionStage<T> supplyBlocking(@NonNull Callable<T> task) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        Authentication auth = authentication;
+        try {
+            CommandExecutor.get().execute(() -> {
+                if (destroyed) {
+                    f.cancel(false);
+                    return;
+                }
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    f.complete(task.call());
+                } catch (Throwable t) {
+                    f.completeExceptionally(t);
+                }
+            }, "SSH command: " + cmdLine.getSingleLine());
+        } catch (RejectedExecutionException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    @Override
+    public void destroy(ChannelSession channel) throws Exception {
+        destroyed = true;
+        CompletionStage<Integer> r = result;
+        if (r != null) {
+            try {
+                r.toCompletableFuture().cancel(false);
+            } catch (UnsupportedOperationException e) {
+                // cannot be cancelled, let it run to completion
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(NonBlockingCommand.class.getName());
+}
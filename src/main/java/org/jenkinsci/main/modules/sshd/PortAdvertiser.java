@@ -2,36 +2,128 @@ package org.jenkinsci.main.modules.sshd;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.PageDecorator;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import jenkins.model.Jenkins;
+import jenkins.model.JenkinsLocationConfiguration;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Advertises SSH endpoint through HTTP header.
  *
+ * <p>
+ * The headers are added to every page, so their values are computed once and reused until the server starts or stops,
+ * the Jenkins URL is changed, or {@link #host} is.
+ *
  * @author Kohsuke Kawaguchi
  */
 @Extension
 public class PortAdvertiser extends PageDecorator {
 
+    /**
+     * Incremented whenever something the advertisement depends on changes.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    @CheckForNull
+    private static volatile Advertisement advertisement;
+
     @CheckForNull
     public String getEndpoint() {
+        Advertisement a = getAdvertisement();
+        return a == null ? null : a.endpoint;
+    }
+
+    /**
+     * Comma-separated fingerprints of the SSH host keys, so that clients can verify them without connecting first.
+     * Only advertised if the {@code advertiseHostKey} system property is set.
+     */
+    @CheckForNull
+    public String getHostKeyFingerprint() {
+        Advertisement a = getAdvertisement();
+        return a == null ? null : a.hostKeyFingerprint;
+    }
+
+    @CheckForNull
+    private Advertisement getAdvertisement() {
+        String host = this.host;
+        Advertisement a = advertisement;
+        if (a != null && a.generation == generation.get() && Objects.equals(a.host, host)) {
+            return a;
+        }
+        int gen = generation.get();
         try {
             int p = SSHD.get().getActualPort();
-            if (p>0) {
-                final Jenkins jenkins = Jenkins.get();
-                return (host != null ? host : new URL(jenkins.getRootUrl()).getHost()) + ":" + p;
+            if (p<=0) {
+                return advertisement = new Advertisement(gen, host, null, null);
+            }
+            String configuredUrl = JenkinsLocationConfiguration.get().getUrl();
+            String rootUrl = configuredUrl != null ? configuredUrl : Jenkins.get().getRootUrl();
+            String endpoint = (host != null ? host : new URL(rootUrl).getHost()) + ":" + p;
+            String fingerprint = SystemProperties.getBoolean(PortAdvertiser.class.getName() + ".advertiseHostKey")
+                    ? String.join(",", SSHD.get().getHostKeyFingerprints())
+                    : null;
+            a = new Advertisement(gen, host, endpoint, fingerprint);
+            if (host != null || configuredUrl != null) {
+                // otherwise the host name comes from the current request
+                advertisement = a;
             }
+            return a;
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Failed to advertise SSH port",e);
         }
         return null;
     }
-    
+
+    /**
+     * Forgets the advertisement, so that it is computed again for the next page.
+     */
+    static void invalidate() {
+        generation.incrementAndGet();
+    }
+
     public String host = System.getProperty(SSHD.class.getName()+".hostName");
 
+    private static final class Advertisement {
+        final int generation;
+        @CheckForNull
+        final String host;
+        @CheckForNull
+        final String endpoint;
+        @CheckForNull
+        final String hostKeyFingerprint;
+
+        Advertisement(int generation, String host, String endpoint, String hostKeyFingerprint) {
+            this.generation = generation;
+            this.host = host;
+            this.endpoint = endpoint;
+            this.hostKeyFingerprint = hostKeyFingerprint;
+        }
+    }
+
+    /**
+     * Invalidates the advertisement when the Jenkins URL is changed.
+     */
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class LocationListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof JenkinsLocationConfiguration) {
+                invalidate();
+            }
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(PortAdvertiser.class.getName());
 }
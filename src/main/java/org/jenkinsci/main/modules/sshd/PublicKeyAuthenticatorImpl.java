@@ -9,6 +9,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.apache.sshd.server.auth.pubkey.PublickeyAuthenticator;
 import org.apache.sshd.server.session.ServerSession;
+import org.jenkinsci.main.modules.cli.auth.ssh.KeyFingerprint;
 import org.jenkinsci.main.modules.cli.auth.ssh.UserPropertyImpl;
 
 import java.security.PublicKey;
@@ -20,25 +21,86 @@ import java.util.logging.Logger;
  * org.jenkinsci.main.modules.cli.auth.ssh} package to match up
  * the public key against what the user has registered.
  *
+ * <p>
+ * This only checks the key, and must be paired with {@link AsyncUserAuthPublicKey},
+ * which then asks the security realm about the user through {@link #authorize}.
+ *
  * @author Kohsuke Kawaguchi
  */
 class PublicKeyAuthenticatorImpl implements PublickeyAuthenticator {
 
     public boolean authenticate(String username, PublicKey key, ServerSession session) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            success = doAuthenticate(username, key, session);
+            return success;
+        } finally {
+            SshdMetrics.get().authenticationAttempted(System.nanoTime() - start, success);
+        }
+    }
+
+    private boolean doAuthenticate(String username, PublicKey key, ServerSession session) {
+        String userKey = User.idStrategy().keyFor(username);
+        KeyFingerprint fingerprint = KeyFingerprint.of(key);
+        FailedAuthenticationCache failures = FailedAuthenticationCache.get();
+        if (fingerprint != null && failures.contains(userKey, fingerprint)) {
+            LOGGER.log(Level.FINE, "Rejecting recently failed key {0} of {1}", new Object[]{ fingerprint, username });
+            SecurityListener.fireFailedToAuthenticate(username);
+            return false;
+        }
+
         User user = this.retrieveOnlyKeyValidatedUser(username, key, session);
 
         if (user == null) {
+            if (fingerprint != null) {
+                failures.add(userKey, fingerprint);
+            }
             SecurityListener.fireFailedToAuthenticate(username);
             return false;
         }
+        return true;
+    }
 
-        UserDetails userDetails = this.verifyUserUsingSecurityRealm(user);
+    /**
+     * Second half of the authentication, once the client has proven possession of an accepted key:
+     * checks that the security realm still knows the user.
+     * This may be slow, so {@link AsyncUserAuthPublicKey} calls it on {@link AuthenticationExecutor}.
+     *
+     * @return null if the user cannot log in.
+     * @see #authenticated
+     */
+    static @CheckForNull UserDetails authorize(String username) {
+        User user = User.getById(username, false);
+        if (user == null) {
+            LOGGER.log(Level.FINE, "User was deleted while authenticating: {0}", new Object[]{ username });
+            SecurityListener.fireFailedToAuthenticate(username);
+            return null;
+        }
+
+        UserDetails userDetails = verifyUserUsingSecurityRealm(user);
         if (userDetails == null) {
             SecurityListener.fireFailedToAuthenticate(username);
-            return false;
+            return null;
         }
+        return userDetails;
+    }
 
-        SecurityListener.fireAuthenticated2(user.getUserDetailsForImpersonation2());
+    /**
+     * Records who the session belongs to, once {@link #authorize} has succeeded and that outcome is final,
+     * i.e. the authentication has not been given up on in the meantime.
+     *
+     * @return false if the user was deleted since.
+     */
+    static boolean authenticated(@NonNull ServerSession session, String username, @NonNull UserDetails userDetails) {
+        User user = User.getById(username, false);
+        if (user == null) {
+            LOGGER.log(Level.FINE, "User was deleted while authenticating: {0}", new Object[]{ username });
+            SecurityListener.fireFailedToAuthenticate(username);
+            return false;
+        }
+        SessionIdentity.attach(session, user, userDetails);
+        SecurityListener.fireAuthenticated2(userDetails);
         return true;
     }
 
@@ -65,9 +127,9 @@ class PublicKeyAuthenticatorImpl implements PublickeyAuthenticator {
     }
 
 
-    private @CheckForNull UserDetails verifyUserUsingSecurityRealm(@NonNull User user) {
+    private static @CheckForNull UserDetails verifyUserUsingSecurityRealm(@NonNull User user) {
         try {
-            return user.getUserDetailsForImpersonation2();
+            return UserDetailsCache.get().getUserDetails(user);
         } catch (UsernameNotFoundException e) {
             LOGGER.log(Level.FINE, e, () -> user.getId() + " is not a real user according to SecurityRealm");
             return null;
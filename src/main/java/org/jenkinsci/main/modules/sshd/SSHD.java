@@ -1,22 +1,35 @@
 package org.jenkinsci.main.modules.sshd;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
 import hudson.ExtensionList;
+import hudson.Util;
 import hudson.init.InitMilestone;
 import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.net.SocketAddress;
 import java.security.KeyPair;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
 import jenkins.model.GlobalConfigurationCategory;
 import jenkins.util.ServerTcpPort;
 import jenkins.util.SystemProperties;
@@ -24,16 +37,23 @@ import jenkins.util.Timer;
 import net.jcip.annotations.GuardedBy;
 import net.sf.json.JSONObject;
 import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.NamedResource;
 import org.apache.sshd.common.cipher.BuiltinCiphers;
 import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.io.IoAcceptor;
+import org.apache.sshd.common.io.IoServiceEventListener;
 import org.apache.sshd.common.kex.KeyExchangeFactory;
-import org.apache.sshd.common.keyprovider.AbstractKeyPairProvider;
+import org.apache.sshd.common.keyprovider.KeyPairProvider;
 import org.apache.sshd.common.mac.Mac;
-import org.apache.sshd.common.session.SessionContext;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
 import org.apache.sshd.server.SshServer;
 import org.apache.sshd.server.auth.UserAuthFactory;
-import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.verb.POST;
 
 /**
  * @author Kohsuke Kawaguchi
@@ -41,25 +61,45 @@ import org.kohsuke.stapler.StaplerRequest2;
 @Extension
 public class SSHD extends GlobalConfiguration {
 
-    //TODO: Make Ciphers configurable from UI, with logic similar to Remoting protocols?
     /**
-     * Lists Built-in Ciphers, which are enabled by default in SSH Core
+     * Lists Built-in Ciphers, which are enabled by default in SSH Core, unless {@link #ciphers} lists others.
+     * The AEAD ciphers come first, as they encrypt and authenticate in a single pass:
+     * AES-GCM is the fastest with AES instructions, ChaCha20-Poly1305 without them.
      */
     private static final List<NamedFactory<Cipher>> ENABLED_CIPHERS = Arrays.<NamedFactory<Cipher>>asList(
+        BuiltinCiphers.aes128gcm, BuiltinCiphers.aes256gcm, BuiltinCiphers.cc20p1305_openssh,
         BuiltinCiphers.aes128ctr, BuiltinCiphers.aes192ctr, BuiltinCiphers.aes256ctr
     );
 
+    /**
+     * How long {@link #doMeasureAlgorithms()} measures each algorithm.
+     */
+    private static final long MEASUREMENT_MILLIS = 200;
+
     /**
      * Comma-separated string of key exchange names to disable. Defaults to a list of DH SHA1 key exchanges, gets its value from {@link SystemProperties}.
+     * Read again by {@link #reconfigure()}.
      */
-    private static final String EXCLUDED_KEY_EXCHANGES = SystemProperties.getString(SSHD.class.getName() + ".excludedKeyExchanges",
-            "diffie-hellman-group-exchange-sha1, diffie-hellman-group14-sha1, diffie-hellman-group1-sha1");
+    private static String getExcludedKeyExchanges() {
+        return SystemProperties.getString(SSHD.class.getName() + ".excludedKeyExchanges",
+                "diffie-hellman-group-exchange-sha1, diffie-hellman-group14-sha1, diffie-hellman-group1-sha1");
+    }
 
     /**
      * Comma-separated string of key exchange names to disable. Defaults to a list of MD5 and truncated SHA-1 HMACs, gets its value from {@link SystemProperties}.
+     * Read again by {@link #reconfigure()}.
      */
-    private static final String EXCLUDED_MACS = SystemProperties.getString(SSHD.class.getName() + ".excludedMacs",
-            "hmac-md5, hmac-md5-96, hmac-sha1-96");
+    private static String getExcludedMacs() {
+        return SystemProperties.getString(SSHD.class.getName() + ".excludedMacs",
+                "hmac-md5, hmac-md5-96, hmac-sha1-96");
+    }
+
+    /**
+     * How many seconds a stopped server waits for running commands to complete before closing their sessions.
+     */
+    private static long getGracePeriod() {
+        return SystemProperties.getLong(SSHD.class.getName() + ".gracePeriod", 10L);
+    }
 
     @NonNull
     @Override
@@ -67,13 +107,68 @@ public class SSHD extends GlobalConfiguration {
         return GlobalConfigurationCategory.get(GlobalConfigurationCategory.Security.class);
     }
 
-    @GuardedBy("this")
-    private transient SshServer sshd;
+    /**
+     * The running server, published once it is listening, so that readers such as {@link #getActualPort()},
+     * which is called on every page render, never wait for a start or stop in progress.
+     */
+    private final transient AtomicReference<ServerState> state = new AtomicReference<>(ServerState.STOPPED);
+
+    /**
+     * Serializes {@link #start()}, {@link #stop()}, {@link #restart()} and {@link #reconfigure()},
+     * which may take a while to bind the socket, initialize the crypto, or drain connections.
+     */
+    final transient Object lifecycle = new Object();
+
+    /**
+     * Connection throttle of the running server, if any, consulted by the listener installed on it.
+     * Created once per start, so that reconfiguring keeps the rates and penalties of the clients.
+     */
+    private transient volatile ConnectionThrottle throttle;
+
+    /**
+     * Current compression settings, if enabled, consulted by the listener installed on the server for each new session.
+     * Replaced by {@link #reconfigure()} without rebinding.
+     */
+    private transient volatile SessionCompression compression;
+
+    /**
+     * Set while a {@link #restart()} is scheduled but has not started yet, so that further changes do not schedule more.
+     */
+    private final transient AtomicBoolean restartPending = new AtomicBoolean();
 
     private volatile int port = -1;
 
+    private boolean useVirtualThreads;
+
+    private boolean allowShell;
+
+    /**
+     * Comma-separated cipher names in order of preference, or null for {@link #ENABLED_CIPHERS}.
+     */
+    @CheckForNull
+    private String ciphers;
+
+    /**
+     * Comma-separated MAC names in order of preference, or null for the defaults of SSH Core.
+     */
+    @CheckForNull
+    private String macs;
+
+    /**
+     * Comma-separated key exchange names in order of preference, or null for the defaults of SSH Core.
+     */
+    @CheckForNull
+    private String keyExchanges;
+
+    @CheckForNull
+    private String cipherProvider;
+
+    @CheckForNull
+    private String macProvider;
+
     public SSHD() {
         load();
+        CommandExecutor.get().setUseVirtualThreads(useVirtualThreads);
     }
 
     /**
@@ -91,10 +186,11 @@ public class SSHD extends GlobalConfiguration {
      *
      * @return Actual port number or -1 if disabled.
      */
-    public synchronized int getActualPort() {
+    public int getActualPort() {
         if (port==-1)   return -1;
-        if (sshd!=null)
-            return sshd.getPort();
+        ServerState current = state.get();
+        if (current.isRunning())
+            return current.port;
         return port;
     }
 
@@ -106,15 +202,292 @@ public class SSHD extends GlobalConfiguration {
     public void setPort(int port) {
         if (this.port!=port) {
             this.port = port;
-            Timer.get().submit(new Runnable() {
-                public void run() {
+            PortAdvertiser.invalidate();
+            scheduleRestart();
+            save();
+        }
+    }
+
+    /**
+     * Restarts the server soon. Requests made before the restart begins are served by a single restart,
+     * which picks up the configuration as of then.
+     */
+    void scheduleRestart() {
+        if (restartPending.compareAndSet(false, true)) {
+            Timer.get().submit(() -> {
+                synchronized (lifecycle) {
+                    // only once the restart can begin, so that requests made while waiting for the lock join it
+                    restartPending.set(false);
                     restart();
                 }
             });
+        }
+    }
+
+    /**
+     * The running server, if any.
+     */
+    @CheckForNull
+    SshServer getServer() {
+        return state.get().server;
+    }
+
+    /**
+     * Fingerprints of the host keys of the running server, in order of preference.
+     */
+    @NonNull
+    List<String> getHostKeyFingerprints() {
+        return HostKeys.fingerprints(state.get().hostKeys);
+    }
+
+    /**
+     * Whether SSH commands run on virtual threads instead of the bounded thread pool.
+     * Only effective on Java 21 and newer.
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        if (this.useVirtualThreads != useVirtualThreads) {
+            this.useVirtualThreads = useVirtualThreads;
+            CommandExecutor.get().setUseVirtualThreads(useVirtualThreads);
+            save();
+        }
+    }
+
+    /**
+     * Whether clients may open an interactive {@link JenkinsShell} rather than only run commands.
+     */
+    public boolean isAllowShell() {
+        return allowShell;
+    }
+
+    public void setAllowShell(boolean allowShell) {
+        if (this.allowShell != allowShell) {
+            this.allowShell = allowShell;
+            synchronized (lifecycle) {
+                SshServer server = state.get().server;
+                if (server != null) {
+                    // only looked up when a client asks for a shell, so no need to restart
+                    server.setShellFactory(allowShell ? JenkinsShell.FACTORY : null);
+                }
+            }
+            save();
+        }
+    }
+
+    /**
+     * Ciphers offered to clients, in order of preference, as a comma-separated list of names.
+     * Names not supported by the JVM are ignored. Null to use the defaults.
+     */
+    @CheckForNull
+    public String getCiphers() {
+        return ciphers;
+    }
+
+    public void setCiphers(@CheckForNull String ciphers) {
+        ciphers = Util.fixEmptyAndTrim(ciphers);
+        if (!Objects.equals(this.ciphers, ciphers)) {
+            this.ciphers = ciphers;
+            reconfigure();
+            save();
+        }
+    }
+
+    /**
+     * MACs offered to clients, in order of preference, as a comma-separated list of names.
+     * AEAD ciphers do not use them. Null to use the defaults.
+     */
+    @CheckForNull
+    public String getMacs() {
+        return macs;
+    }
+
+    public void setMacs(@CheckForNull String macs) {
+        macs = Util.fixEmptyAndTrim(macs);
+        if (!Objects.equals(this.macs, macs)) {
+            this.macs = macs;
+            reconfigure();
+            save();
+        }
+    }
+
+    /**
+     * Key exchanges offered to clients, in order of preference, as a comma-separated list of names.
+     * Null to use the defaults.
+     */
+    @CheckForNull
+    public String getKeyExchanges() {
+        return keyExchanges;
+    }
+
+    public void setKeyExchanges(@CheckForNull String keyExchanges) {
+        keyExchanges = Util.fixEmptyAndTrim(keyExchanges);
+        if (!Objects.equals(this.keyExchanges, keyExchanges)) {
+            this.keyExchanges = keyExchanges;
+            reconfigure();
             save();
         }
     }
 
+    @POST
+    public FormValidation doCheckCiphers(@QueryParameter String value) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return checkNames(value, SupportedNames.CIPHERS);
+    }
+
+    @POST
+    public FormValidation doCheckMacs(@QueryParameter String value) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return checkNames(value, SupportedNames.MACS);
+    }
+
+    @POST
+    public FormValidation doCheckKeyExchanges(@QueryParameter String value) {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        return checkNames(value, SupportedNames.KEY_EXCHANGES);
+    }
+
+    /**
+     * Names of the algorithms supported by SSH Core on this JVM, which do not change once looked up.
+     */
+    private static final class SupportedNames {
+        private static final List<String> CIPHERS;
+        private static final List<String> MACS;
+        private static final List<String> KEY_EXCHANGES;
+
+        static {
+            SshServer defaults = SshServer.setUpDefaultServer();
+            CIPHERS = NamedResource.getNameList(defaults.getCipherFactories());
+            MACS = NamedResource.getNameList(defaults.getMacFactories());
+            KEY_EXCHANGES = NamedResource.getNameList(defaults.getKeyExchangeFactories());
+        }
+    }
+
+    private static FormValidation checkNames(String value, List<String> supported) {
+        List<String> names = splitNames(value);
+        List<String> unsupported = names.stream().filter(n -> supported.stream().noneMatch(n::equalsIgnoreCase)).collect(Collectors.toList());
+        if (!names.isEmpty() && unsupported.size() == names.size()) {
+            return FormValidation.error("None of these is supported, the defaults will be used. Supported: " + String.join(", ", supported));
+        }
+        if (!unsupported.isEmpty()) {
+            return FormValidation.warning("Not supported, will be ignored: " + String.join(", ", unsupported)
+                    + ". Supported: " + String.join(", ", supported));
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * JCE provider running the ciphers, {@link CryptoProviders#AUTO} for the fastest one,
+     * or null to leave the choice to SSH Core.
+     */
+    @CheckForNull
+    public String getCipherProvider() {
+        return cipherProvider;
+    }
+
+    public void setCipherProvider(@CheckForNull String cipherProvider) {
+        cipherProvider = Util.fixEmptyAndTrim(cipherProvider);
+        if (!Objects.equals(this.cipherProvider, cipherProvider)) {
+            this.cipherProvider = cipherProvider;
+            reconfigure();
+            save();
+        }
+    }
+
+    /**
+     * JCE provider running the MACs, {@link CryptoProviders#AUTO} for the fastest one,
+     * or null to leave the choice to SSH Core.
+     */
+    @CheckForNull
+    public String getMacProvider() {
+        return macProvider;
+    }
+
+    public void setMacProvider(@CheckForNull String macProvider) {
+        macProvider = Util.fixEmptyAndTrim(macProvider);
+        if (!Objects.equals(this.macProvider, macProvider)) {
+            this.macProvider = macProvider;
+            reconfigure();
+            save();
+        }
+    }
+
+    public ListBoxModel doFillCipherProviderItems() {
+        return providerItems();
+    }
+
+    public ListBoxModel doFillMacProviderItems() {
+        return providerItems();
+    }
+
+    private static ListBoxModel providerItems() {
+        ListBoxModel items = new ListBoxModel();
+        items.add("Default", "");
+        items.add("Fastest, measured at startup", CryptoProviders.AUTO);
+        for (String name : CryptoProviders.getProviderNames()) {
+            items.add(name);
+        }
+        return items;
+    }
+
+    /**
+     * Measures the bulk throughput of the supported ciphers and MACs on each JCE provider able to run them,
+     * fastest first.
+     */
+    @POST
+    public FormValidation doMeasureAlgorithms() {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        SshServer defaults = SshServer.setUpDefaultServer();
+        StringBuilder html = new StringBuilder("<table><tr><th>Cipher</th><th>Provider</th><th>MiB/s</th></tr>");
+        appendRows(html, measure(defaults.getCipherFactories(), CryptoProviders::cipherProviders, AlgorithmThroughput::measureCipher));
+        html.append("<tr><th>MAC</th><th>Provider</th><th>MiB/s</th></tr>");
+        appendRows(html, measure(defaults.getMacFactories(), CryptoProviders::macProviders, AlgorithmThroughput::measureMac));
+        return FormValidation.okWithMarkup(html.append("</table>").toString());
+    }
+
+    private static <T> List<Throughput> measure(List<NamedFactory<T>> factories,
+                                                Function<NamedFactory<T>, Map<String, NamedFactory<T>>> providers,
+                                                CryptoProviders.Measurement<NamedFactory<T>> measurement) {
+        List<Throughput> results = new ArrayList<>();
+        for (NamedFactory<T> factory : factories) {
+            Map<String, NamedFactory<T>> candidates = providers.apply(factory);
+            if (candidates.isEmpty()) {
+                // implemented by SSH Core itself
+                candidates = Map.of("SSH Core", factory);
+            }
+            for (Map.Entry<String, NamedFactory<T>> e : candidates.entrySet()) {
+                try {
+                    results.add(new Throughput(factory.getName(), e.getKey(), measurement.measure(e.getValue(), MEASUREMENT_MILLIS)));
+                } catch (Exception x) {
+                    LOGGER.log(Level.FINE, "Failed to measure " + factory.getName() + " on " + e.getKey(), x);
+                }
+            }
+        }
+        results.sort(Comparator.comparingDouble((Throughput t) -> t.mibPerSecond).reversed());
+        return results;
+    }
+
+    private static void appendRows(StringBuilder html, List<Throughput> results) {
+        for (Throughput t : results) {
+            html.append("<tr><td>").append(Util.escape(t.algorithm)).append("</td><td>").append(Util.escape(t.provider))
+                    .append("</td><td>").append(String.format(Locale.ROOT, "%.0f", t.mibPerSecond)).append("</td></tr>");
+        }
+    }
+
+    private static final class Throughput {
+        final String algorithm;
+        final String provider;
+        final double mibPerSecond;
+
+        Throughput(String algorithm, String provider, double mibPerSecond) {
+            this.algorithm = algorithm;
+            this.provider = provider;
+            this.mibPerSecond = mibPerSecond;
+        }
+    }
+
     /**
      * Provides a list of Cipher factories, which can be activated on the instance.
      * Cyphers will be considered as activated if they are defined in {@link #ENABLED_CIPHERS} and supported in the current JVM.
@@ -140,45 +513,137 @@ public class SSHD extends GlobalConfiguration {
         return activatedCiphers;
     }
 
-    public synchronized void start() throws IOException, InterruptedException {
+    public void start() throws IOException, InterruptedException {
+        synchronized (lifecycle) {
+            doStart();
+        }
+    }
+
+    @GuardedBy("lifecycle")
+    private void doStart() throws IOException, InterruptedException {
         int port = this.port; // Capture local copy to prevent race conditions. Setting port to -1 after the check would blow up later.
         if (port<0) return; // don't start it
         LOGGER.fine("starting SSHD");
 
-        stop();
-        sshd = SshServer.setUpDefaultServer();
+        doStop();
+        SshServer sshd = SshServer.setUpDefaultServer();
         sshd.setUserAuthFactories(Arrays.<UserAuthFactory>asList(new UserAuthNamedFactory()));
-        
-        sshd.setCipherFactories(getActivatedCiphers());
-        sshd.setKeyExchangeFactories(filterKeyExchanges(sshd.getKeyExchangeFactories()));
-        sshd.setMacFactories(filterMacs(sshd.getMacFactories()));
+        applySettings(sshd);
         sshd.setPort(port);
-        sshd.setKeyPairProvider(new AbstractKeyPairProvider() {
+        List<KeyPair> hostKeys = HostKeys.load();
+        sshd.setKeyPairProvider(KeyPairProvider.wrap(hostKeys));
+
+        sshd.setCommandFactory(new CommandFactoryImpl());
+        sshd.setPublickeyAuthenticator(new PublicKeyAuthenticatorImpl());
+        SshdMetrics.get().install(sshd);
+        throttle = ConnectionThrottle.fromSystemProperties();
+        sshd.setIoServiceEventListener(new IoServiceEventListener() {
             @Override
-            public Iterable<KeyPair> loadKeys(SessionContext session) throws IOException, GeneralSecurityException {
-                InstanceIdentity identity = InstanceIdentity.get();
-                return Collections.singletonList(new KeyPair(identity.getPublic(), identity.getPrivate()));
+            public void connectionAccepted(IoAcceptor acceptor, SocketAddress local, SocketAddress remote, SocketAddress service)
+                    throws IOException {
+                ConnectionThrottle t = throttle;
+                if (t != null) {
+                    t.connectionAccepted(acceptor, local, remote, service);
+                }
             }
         });
 
-        sshd.setShellFactory(null); // no shell support
-        sshd.setCommandFactory(new CommandFactoryImpl());
-        sshd.setPublickeyAuthenticator(new PublicKeyAuthenticatorImpl());
+        sshd.addSessionListener(new SessionListener() {
+            @Override
+            public void sessionCreated(Session session) {
+                SessionCompression c = compression;
+                if (c != null) {
+                    c.sessionCreated(session);
+                }
+            }
+        });
+
+        sshd.start();
+        state.set(new ServerState(sshd, SshdJmx.register(sshd), hostKeys));
+        PortAdvertiser.invalidate();
+        LOGGER.info("Started SSHD at port " + sshd.getPort());
+    }
+
+    /**
+     * Applies the settings that do not affect the listening socket.
+     * New sessions of a running server pick them up, so {@link #reconfigure()} can apply them without a restart.
+     */
+    private void applySettings(SshServer server) {
+        // the defaults, rather than what the server currently uses, which has already been filtered
+        SshServer defaults = SshServer.setUpDefaultServer();
+        server.setCipherFactories(CryptoProviders.pinCiphers(ciphers == null
+                ? getActivatedCiphers()
+                : select(defaults.getCipherFactories(), ciphers, getActivatedCiphers()), cipherProvider));
+        server.setKeyExchangeFactories(filterKeyExchanges(
+                select(defaults.getKeyExchangeFactories(), keyExchanges, defaults.getKeyExchangeFactories())));
+        server.setMacFactories(CryptoProviders.pinMacs(
+                filterMacs(select(defaults.getMacFactories(), macs, defaults.getMacFactories())), macProvider));
+        server.setShellFactory(allowShell ? JenkinsShell.FACTORY : null);
+        SessionCompression c = SessionCompression.fromSystemProperties();
+        server.setCompressionFactories(c != null ? c.getFactories() : List.<NamedFactory<Compression>>of(BuiltinCompressions.none));
+        compression = c;
 
         // Allow to configure idle timeout with a system property
         String idleTimeoutPropertyName = SSHD.class.getName() + "." + IDLE_TIMEOUT_KEY;
-        IdleTimeout.fromSystemProperty(idleTimeoutPropertyName).apply(sshd);
+        IdleTimeout.fromSystemProperty(idleTimeoutPropertyName).apply(server);
+    }
 
-        sshd.start();
-        LOGGER.info("Started SSHD at port " + sshd.getPort());
+    /**
+     * Applies the current algorithm, timeout and compression settings to the running server, without a restart.
+     * Open sessions keep what they negotiated; new sessions use the new settings.
+     */
+    public void reconfigure() {
+        synchronized (lifecycle) {
+            ServerState current = state.get();
+            if (!current.isRunning()) {
+                return;
+            }
+            applySettings(current.server);
+            current.jmx.update(current.server);
+            LOGGER.fine("Reconfigured SSHD");
+        }
+    }
+
+    /**
+     * Picks the named algorithms out of the supported ones, in the given order.
+     *
+     * @param preference comma-separated names, or null for the fallback
+     * @param fallback used if none of the names is supported
+     */
+    static <T extends NamedResource> List<T> select(List<T> supported, @CheckForNull String preference, List<T> fallback) {
+        if (preference == null) {
+            return fallback;
+        }
+        List<T> selected = new ArrayList<>();
+        for (String name : splitNames(preference)) {
+            T factory = NamedResource.findByName(name, String.CASE_INSENSITIVE_ORDER, supported);
+            if (factory == null) {
+                LOGGER.log(Level.WARNING, "Ignoring unsupported SSH algorithm {0}", name);
+            } else if (!selected.contains(factory)) {
+                selected.add(factory);
+            }
+        }
+        if (selected.isEmpty()) {
+            LOGGER.log(Level.WARNING, "None of the SSH algorithms {0} is supported, using the defaults", preference);
+            return fallback;
+        }
+        return selected;
+    }
+
+    private static List<String> splitNames(@CheckForNull String names) {
+        if (names == null) {
+            return List.of();
+        }
+        return Arrays.stream(names.split(",")).map(String::trim).filter(s -> !s.isEmpty()).collect(Collectors.toList());
     }
 
     private List<NamedFactory<Mac>> filterMacs(List<NamedFactory<Mac>> macFactories) {
-        if (EXCLUDED_MACS == null || EXCLUDED_MACS.isBlank()) {
+        String excludedMacs = getExcludedMacs();
+        if (excludedMacs == null || excludedMacs.isBlank()) {
             return macFactories;
         }
 
-        List<String> excludedNames = Arrays.stream(EXCLUDED_MACS.split(",")).filter(s -> !s.isBlank()).map(String::trim).collect(Collectors.toList());
+        List<String> excludedNames = Arrays.stream(excludedMacs.split(",")).filter(s -> !s.isBlank()).map(String::trim).collect(Collectors.toList());
 
         List<NamedFactory<Mac>> filtered = new ArrayList<>();
         for (NamedFactory<Mac> macFactory : macFactories) {
@@ -194,16 +659,17 @@ public class SSHD extends GlobalConfiguration {
     }
 
     /**
-     * Filter key exchanges based on configuration from {@link #EXCLUDED_KEY_EXCHANGES}.
+     * Filter key exchanges based on configuration from {@link #getExcludedKeyExchanges()}.
      * @param keyExchangeFactories the full list of key exchange factories
      * @return a filtered list of key exchange factories
      */
     private List<KeyExchangeFactory> filterKeyExchanges(List<KeyExchangeFactory> keyExchangeFactories) {
-        if (EXCLUDED_KEY_EXCHANGES == null || EXCLUDED_KEY_EXCHANGES.isBlank()) {
+        String excludedKeyExchanges = getExcludedKeyExchanges();
+        if (excludedKeyExchanges == null || excludedKeyExchanges.isBlank()) {
             return keyExchangeFactories;
         }
 
-        List<String> excludedNames = Arrays.stream(EXCLUDED_KEY_EXCHANGES.split(",")).filter(s -> !s.isBlank()).map(String::trim).collect(Collectors.toList());
+        List<String> excludedNames = Arrays.stream(excludedKeyExchanges.split(",")).filter(s -> !s.isBlank()).map(String::trim).collect(Collectors.toList());
 
         List<KeyExchangeFactory> filtered = new ArrayList<>();
         for (KeyExchangeFactory keyExchangeNamedFactory : keyExchangeFactories) {
@@ -218,28 +684,153 @@ public class SSHD extends GlobalConfiguration {
         return filtered;
     }
 
-    public synchronized void restart() {
+    /**
+     * Restarts the server with the current configuration.
+     * The old server stops accepting connections right away, but its running commands get to complete
+     * in the background for the {@linkplain #getGracePeriod() grace period}.
+     */
+    public void restart() {
+        synchronized (lifecycle) {
+            try {
+                SshServer old = detach();
+                if (old != null) {
+                    unbind(old);
+                    Timer.get().submit(() -> drain(old));
+                }
+                doStart();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to restart SSHD", e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, waits for the running commands to complete for the
+     * {@linkplain #getGracePeriod() grace period}, then closes all sessions.
+     */
+    public void stop() throws IOException, InterruptedException {
+        synchronized (lifecycle) {
+            doStop();
+        }
+    }
+
+    @GuardedBy("lifecycle")
+    private void doStop() throws IOException, InterruptedException {
+        SshServer old = detach();
+        if (old != null) {
+            unbind(old);
+            awaitChannelsClosed(old);
+            old.stop(true);
+        }
+    }
+
+    /**
+     * Marks the server as stopped and unregisters its MBeans.
+     *
+     * @return the server that was running, if any, still to be stopped.
+     */
+    @GuardedBy("lifecycle")
+    private SshServer detach() {
+        ServerState old = state.getAndSet(ServerState.STOPPED);
+        PortAdvertiser.invalidate();
+        if (old.jmx != null) {
+            old.jmx.unregister();
+        }
+        return old.server;
+    }
+
+    private static void unbind(SshServer server) {
+        IoAcceptor acceptor = server.getAcceptor();
+        if (acceptor != null) {
+            acceptor.unbind();
+        }
+    }
+
+    private static void drain(SshServer server) {
         try {
-            if (sshd!=null) {
-                sshd.stop(false);
-                sshd = null;
+            awaitChannelsClosed(server);
+            server.stop(true);
+        } catch (IOException | InterruptedException e) {
+            LOGGER.log(Level.WARNING, "Failed to stop the previous SSHD", e);
+        }
+    }
+
+    private static void awaitChannelsClosed(SshServer server) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(getGracePeriod());
+        int open;
+        while ((open = countOpenChannels(server)) > 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                LOGGER.log(Level.INFO, "Closing {0} SSH channels still open after the grace period", open);
+                return;
             }
-            start();
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Failed to restart SSHD", e);
+            Thread.sleep(100);
         }
     }
 
-    public synchronized void stop() throws IOException, InterruptedException {
-        if (sshd!=null) {
-            sshd.stop(true);
-            sshd = null;
+    private static int countOpenChannels(SshServer server) {
+        int open = 0;
+        for (Session session : server.getActiveSessions()) {
+            SessionStats stats = SessionStats.of(session);
+            if (stats != null) {
+                open += stats.getOpenChannels();
+            }
+        }
+        return open;
+    }
+
+    /**
+     * What {@link SSHD} is running. Immutable.
+     */
+    private static final class ServerState {
+        static final ServerState STOPPED = new ServerState(null, null, List.of());
+
+        @CheckForNull
+        final SshServer server;
+        @CheckForNull
+        final SshdJmx jmx;
+        /**
+         * The port the server is bound to, which differs from the configured one when that is 0.
+         */
+        final int port;
+        final List<KeyPair> hostKeys;
+
+        ServerState(SshServer server, SshdJmx jmx, List<KeyPair> hostKeys) {
+            this.server = server;
+            this.jmx = jmx;
+            this.port = server != null ? server.getPort() : -1;
+            this.hostKeys = hostKeys;
+        }
+
+        boolean isRunning() {
+            return server != null;
         }
     }
 
     @Override
     public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
-        setPort(new ServerTcpPort(json.getJSONObject("port")).getPort());
+        // the setters each save and apply, so bind the fields directly and do both once
+        int port = new ServerTcpPort(json.getJSONObject("port")).getPort();
+        boolean portChanged = this.port != port;
+        boolean useVirtualThreads = json.optBoolean("useVirtualThreads");
+        boolean useVirtualThreadsChanged = this.useVirtualThreads != useVirtualThreads;
+        this.port = port;
+        this.useVirtualThreads = useVirtualThreads;
+        allowShell = json.optBoolean("allowShell");
+        ciphers = Util.fixEmptyAndTrim(json.optString("ciphers"));
+        macs = Util.fixEmptyAndTrim(json.optString("macs"));
+        keyExchanges = Util.fixEmptyAndTrim(json.optString("keyExchanges"));
+        cipherProvider = Util.fixEmptyAndTrim(json.optString("cipherProvider"));
+        macProvider = Util.fixEmptyAndTrim(json.optString("macProvider"));
+        save();
+
+        if (useVirtualThreadsChanged) {
+            CommandExecutor.get().setUseVirtualThreads(useVirtualThreads);
+        }
+        reconfigure();
+        if (portChanged) {
+            PortAdvertiser.invalidate();
+            scheduleRestart();
+        }
         return true;
     }
 
@@ -260,6 +851,11 @@ public class SSHD extends GlobalConfiguration {
         get().start();
     }
 
+    @Terminator
+    public static void shutdown() throws IOException, InterruptedException {
+        get().stop();
+    }
+
     private static Logger MINA_LOGGER = Logger.getLogger("org.apache.sshd");
 
     static {
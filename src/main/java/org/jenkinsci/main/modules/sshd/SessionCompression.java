@@ -0,0 +1,190 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.common.compression.Compression;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/**
+ * Offers {@code zlib@openssh.com} compression, which starts once the client is authenticated,
+ * to clients outside of the excluded address ranges.
+ *
+ * <p>
+ * Compressing pays off for commands streaming large console logs or configurations over slow links,
+ * but costs more CPU time than it saves on loopback and LAN connections, which are excluded by default.
+ * Each session gets its own compression factory, so that the bytes and CPU time spent compressing
+ * are accounted to it in {@link SessionStats}.
+ */
+@Restricted(NoExternalUse.class)
+public final class SessionCompression implements SessionListener {
+    private static final String PREFIX = SessionCompression.class.getName();
+
+    /**
+     * Loopback, private and link-local ranges.
+     */
+    static final String DEFAULT_EXCLUDED = "127.0.0.0/8, ::1, 10.0.0.0/8, 172.16.0.0/12, 192.168.0.0/16, 169.254.0.0/16, fc00::/7, fe80::/10";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int level;
+    private final List<CidrRange> excluded;
+
+    SessionCompression(int level, List<CidrRange> excluded) {
+        this.level = level;
+        this.excluded = excluded;
+    }
+
+    /**
+     * Creates the compression configured from system properties.
+     *
+     * @return null if compression is disabled, which is the default.
+     */
+    @CheckForNull
+    static SessionCompression fromSystemProperties() {
+        if (!SystemProperties.getBoolean(PREFIX + ".enabled")) {
+            return null;
+        }
+        int level = SystemProperties.getInteger(PREFIX + ".level", 6);
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            LOGGER.log(Level.WARNING, "Invalid SSH compression level {0}, using the default", level);
+            level = Deflater.DEFAULT_COMPRESSION;
+        }
+        return new SessionCompression(level, parseRanges(SystemProperties.getString(PREFIX + ".excluded", DEFAULT_EXCLUDED)));
+    }
+
+    static List<CidrRange> parseRanges(String ranges) {
+        List<CidrRange> result = new ArrayList<>();
+        for (String s : ranges.split(",")) {
+            if (s.isBlank()) {
+                continue;
+            }
+            try {
+                result.add(CidrRange.parse(s));
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Ignoring SSH compression exclusion: {0}", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The compressions the server offers, before {@link #sessionCreated(Session)} picks those of a session.
+     */
+    @NonNull
+    List<NamedFactory<Compression>> getFactories() {
+        return List.of(BuiltinCompressions.delayedZlib, BuiltinCompressions.none);
+    }
+
+    /**
+     * Whether connections from the given address are not compressed.
+     */
+    boolean isExcluded(@CheckForNull SocketAddress remote) {
+        if (!(remote instanceof InetSocketAddress) || ((InetSocketAddress) remote).getAddress() == null) {
+            return false;
+        }
+        InetAddress address = ((InetSocketAddress) remote).getAddress();
+        for (CidrRange range : excluded) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void sessionCreated(Session session) {
+        if (isExcluded(session.getRemoteAddress())) {
+            session.setCompressionFactories(List.of(BuiltinCompressions.none));
+            return;
+        }
+        NamedFactory<Compression> measured = new NamedFactory<Compression>() {
+            @Override
+            public String getName() {
+                return BuiltinCompressions.delayedZlib.getName();
+            }
+
+            @Override
+            public Compression create() {
+                return new MeasuredCompression(BuiltinCompressions.delayedZlib.create(), level, session);
+            }
+        };
+        session.setCompressionFactories(List.of(measured, BuiltinCompressions.none));
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Compresses at the configured level, and accounts the bytes and CPU time to the session.
+     */
+    private static final class MeasuredCompression implements Compression {
+        private final Compression delegate;
+        private final int level;
+        private final Session session;
+
+        MeasuredCompression(Compression delegate, int level, Session session) {
+            this.delegate = delegate;
+            this.level = level;
+            this.session = session;
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+        @Override
+        public boolean isDelayed() {
+            return delegate.isDelayed();
+        }
+
+        @Override
+        public boolean isCompressionExecuted() {
+            return delegate.isCompressionExecuted();
+        }
+
+        @Override
+        public void init(Type type, int level) {
+            delegate.init(type, type == Type.Deflater ? this.level : level);
+        }
+
+        @Override
+        public void compress(Buffer buffer) throws IOException {
+            long raw = buffer.available();
+            long start = cpuTime();
+            delegate.compress(buffer);
+            SshdMetrics.get().compressed(session, raw, buffer.available(), cpuTime() - start);
+        }
+
+        @Override
+        public void uncompress(Buffer from, Buffer to) throws IOException {
+            long compressed = from.available();
+            long before = to.available();
+            long start = cpuTime();
+            delegate.uncompress(from, to);
+            SshdMetrics.get().compressed(session, to.available() - before, compressed, cpuTime() - start);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SessionCompression.class.getName());
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.User;
+import jenkins.model.Jenkins;
+import org.apache.sshd.common.AttributeRepository.AttributeKey;
+import org.apache.sshd.server.session.ServerSession;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * The user an SSH session authenticated as, remembered on the session so that its channels
+ * do not each look up and impersonate the user again.
+ *
+ * <p>
+ * Every channel still checks that the user exists and that the security realm still accepts it,
+ * both of which are cheap thanks to the in-memory user map and {@link UserDetailsCache}.
+ */
+@Restricted(NoExternalUse.class)
+public final class SessionIdentity {
+    private static final AttributeKey<SessionIdentity> KEY = new AttributeKey<>();
+
+    private final User user;
+    private final UserDetails details;
+    private final Authentication authentication;
+
+    private SessionIdentity(User user, UserDetails details) {
+        this.user = user;
+        this.details = details;
+        this.authentication = user.impersonate2(details);
+    }
+
+    /**
+     * Called once public key authentication succeeded.
+     */
+    static void attach(@NonNull ServerSession session, @NonNull User user, @NonNull UserDetails details) {
+        session.setAttribute(KEY, new SessionIdentity(user, details));
+    }
+
+    /**
+     * Finds out who runs commands on the given session.
+     *
+     * @return null if security is disabled, in which case there is no user.
+     * @throws AuthenticationException if the user has been deleted or disabled since the session was authenticated.
+     */
+    @CheckForNull
+    public static SessionIdentity resolve(@NonNull ServerSession session) throws AuthenticationException {
+        if (!Jenkins.get().isUseSecurity()) {
+            return null;    // not authenticated. anonymous.
+        }
+        SessionIdentity identity = session.getAttribute(KEY);
+        String id = identity != null ? identity.user.getId() : session.getUsername();
+        User user = User.getById(id, false);
+        if (user == null) {
+            throw new UsernameNotFoundException(id + " no longer exists");
+        }
+        UserDetails details = UserDetailsCache.get().getUserDetails(user);
+        if (identity == null || identity.user != user || identity.details != details) {
+            // first channel of a session not authenticated by us, or the user has changed since
+            identity = new SessionIdentity(user, details);
+            session.setAttribute(KEY, identity);
+        }
+        return identity;
+    }
+
+    @NonNull
+    public User getUser() {
+        return user;
+    }
+
+    @NonNull
+    public Authentication getAuthentication() {
+        return authentication;
+    }
+}
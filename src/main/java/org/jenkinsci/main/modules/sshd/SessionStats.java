@@ -0,0 +1,109 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.apache.sshd.common.AttributeRepository.AttributeKey;
+import org.apache.sshd.common.session.Session;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a single SSH session, attached to it by {@link SshdMetrics}.
+ */
+@Restricted(NoExternalUse.class)
+public final class SessionStats {
+    private static final AttributeKey<SessionStats> KEY = new AttributeKey<>();
+
+    private final long createdMillis = System.currentTimeMillis();
+    private final long createdNanos = System.nanoTime();
+    private final AtomicBoolean keyEstablished = new AtomicBoolean();
+    private final AtomicInteger openChannels = new AtomicInteger();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionCpuNanos = new LongAdder();
+
+    static SessionStats attach(Session session) {
+        SessionStats stats = new SessionStats();
+        session.setAttribute(KEY, stats);
+        return stats;
+    }
+
+    @CheckForNull
+    public static SessionStats of(@CheckForNull Session session) {
+        return session == null ? null : session.getAttribute(KEY);
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * Marks the initial key exchange as done.
+     *
+     * @return true the first time only, as later re-keying raises the same event.
+     */
+    boolean keyEstablished() {
+        return keyEstablished.compareAndSet(false, true);
+    }
+
+    AtomicInteger openChannels() {
+        return openChannels;
+    }
+
+    public int getOpenChannels() {
+        return openChannels.get();
+    }
+
+    void addBytesIn(long n) {
+        bytesIn.add(n);
+    }
+
+    void addBytesOut(long n) {
+        bytesOut.add(n);
+    }
+
+    /**
+     * Bytes read by commands from their standard input.
+     */
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * Bytes written by commands to their standard output and error.
+     */
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    void addCompressed(long uncompressed, long compressed, long cpuNanos) {
+        uncompressedBytes.add(uncompressed);
+        compressedBytes.add(compressed);
+        compressionCpuNanos.add(cpuNanos);
+    }
+
+    /**
+     * Ratio of the size of the packets before compression to their size after, in both directions,
+     * or 0 if nothing has been compressed.
+     */
+    public double getCompressionRatio() {
+        long compressed = compressedBytes.sum();
+        return compressed == 0 ? 0 : (double) uncompressedBytes.sum() / compressed;
+    }
+
+    /**
+     * CPU time spent compressing and decompressing packets, in nanoseconds.
+     */
+    public long getCompressionCpuNanos() {
+        return compressionCpuNanos.sum();
+    }
+}
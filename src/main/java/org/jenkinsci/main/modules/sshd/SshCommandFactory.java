@@ -1,12 +1,15 @@
 package org.jenkinsci.main.modules.sshd;
 
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.ExtensionList;
 import hudson.ExtensionPoint;
 import hudson.util.QuotedStringTokenizer;
 
 import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import org.apache.sshd.server.command.Command;
 
 /**
@@ -26,6 +29,34 @@ public abstract class SshCommandFactory implements ExtensionPoint {
      */
     public abstract Command create(CommandLine commandLine);
 
+    /**
+     * Names of the commands this factory handles, that is the possible values of the first token of the command line.
+     *
+     * <p>
+     * {@link CommandFactoryImpl} uses these to skip factories that cannot handle a command.
+     * A factory that declares names or {@linkplain #getCommandPrefixes() prefixes} is only asked to
+     * {@link #create} commands matching them. A factory that declares neither, which is the default,
+     * is asked about every command.
+     *
+     * <p>
+     * The declarations are read again whenever the list of {@link SshCommandFactory}s
+     * or of {@link hudson.cli.CLICommand}s changes.
+     */
+    @NonNull
+    public Set<String> getCommandNames() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Prefixes of the names of the commands this factory handles.
+     *
+     * @see #getCommandNames()
+     */
+    @NonNull
+    public Set<String> getCommandPrefixes() {
+        return Collections.emptySet();
+    }
+
     /**
      * Represents a command line.
      *
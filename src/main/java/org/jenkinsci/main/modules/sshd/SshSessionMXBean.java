@@ -0,0 +1,42 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * JMX view of an open SSH session.
+ *
+ * @see SshdJmx
+ */
+@Restricted(NoExternalUse.class)
+public interface SshSessionMXBean {
+    String getRemoteAddress();
+
+    /**
+     * Name of the user, or null before authentication.
+     */
+    String getUser();
+
+    int getOpenChannels();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getAgeMillis();
+
+    /**
+     * Size of the packets before compression divided by their size after, 0 if the session is not compressed.
+     */
+    double getCompressionRatio();
+
+    /**
+     * CPU time spent compressing and decompressing the packets of the session.
+     */
+    long getCompressionCpuMillis();
+
+    /**
+     * Closes the session immediately, aborting its commands.
+     */
+    void close();
+}
@@ -0,0 +1,250 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.apache.sshd.common.NamedResource;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.core.CoreModuleProperties;
+import org.apache.sshd.server.SshServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registers {@link SshdMXBean} and one {@link SshSessionMXBean} per open session with the platform MBean server.
+ *
+ * <p>
+ * Server attributes come from a snapshot taken when the server started or was reconfigured, and session attributes from
+ * {@link SessionStats}, so reading them never waits for {@link SSHD}.
+ */
+final class SshdJmx {
+    private static final String DOMAIN = "org.jenkinsci.main.modules.sshd";
+
+    private final MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+    private final ObjectName serverName;
+    private volatile ServerBean server;
+    private final Map<Session, ObjectName> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionIds = new AtomicLong();
+
+    private SshdJmx(SshServer sshd) throws MalformedObjectNameException {
+        serverName = new ObjectName(DOMAIN + ":type=SSHD");
+        server = new ServerBean(sshd);
+    }
+
+    /**
+     * Registers the beans of a server that has just been started.
+     */
+    @NonNull
+    static SshdJmx register(@NonNull SshServer sshd) {
+        SshdJmx jmx;
+        try {
+            jmx = new SshdJmx(sshd);
+        } catch (MalformedObjectNameException e) {
+            throw new AssertionError(e);
+        }
+        jmx.registerQuietly(jmx.server, jmx.serverName);
+        sshd.addSessionListener(jmx.new SessionTracker());
+        return jmx;
+    }
+
+    /**
+     * Replaces the server bean with a new snapshot, after the server was reconfigured.
+     */
+    void update(@NonNull SshServer sshd) {
+        ServerBean bean = new ServerBean(sshd);
+        server = bean;
+        registerQuietly(bean, serverName);
+    }
+
+    /**
+     * Unregisters the beans of the server and of all its sessions.
+     */
+    void unregister() {
+        server.running = false;
+        unregisterQuietly(serverName);
+        for (ObjectName name : sessions.values()) {
+            unregisterQuietly(name);
+        }
+        sessions.clear();
+    }
+
+    private void registerQuietly(Object bean, ObjectName name) {
+        try {
+            if (mbeans.isRegistered(name)) {
+                // left over from a server that was not stopped cleanly
+                mbeans.unregisterMBean(name);
+            }
+            mbeans.registerMBean(bean, name);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register " + name, e);
+        }
+    }
+
+    private void unregisterQuietly(ObjectName name) {
+        try {
+            if (mbeans.isRegistered(name)) {
+                mbeans.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to unregister " + name, e);
+        }
+    }
+
+    private static String[] names(List<? extends NamedResource> factories) {
+        return factories.stream().map(NamedResource::getName).toArray(String[]::new);
+    }
+
+    private static final class ServerBean implements SshdMXBean {
+        private final int port;
+        private final String[] ciphers;
+        private final String[] keyExchanges;
+        private final String[] macs;
+        private final long idleTimeout;
+        private volatile boolean running = true;
+
+        ServerBean(SshServer sshd) {
+            port = sshd.getPort();
+            ciphers = names(sshd.getCipherFactories());
+            keyExchanges = names(sshd.getKeyExchangeFactories());
+            macs = names(sshd.getMacFactories());
+            idleTimeout = CoreModuleProperties.IDLE_TIMEOUT.getRequired(sshd).toMillis();
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+
+        @Override
+        public String[] getCiphers() {
+            return ciphers.clone();
+        }
+
+        @Override
+        public String[] getKeyExchanges() {
+            return keyExchanges.clone();
+        }
+
+        @Override
+        public String[] getMacs() {
+            return macs.clone();
+        }
+
+        @Override
+        public long getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        @Override
+        public long getActiveSessions() {
+            return SshdMetrics.get().getActiveSessions();
+        }
+
+        @Override
+        public long getActiveChannels() {
+            return SshdMetrics.get().getActiveChannels();
+        }
+    }
+
+    private static final class SessionBean implements SshSessionMXBean {
+        private final Session session;
+        private final String remoteAddress;
+
+        SessionBean(Session session) {
+            this.session = session;
+            this.remoteAddress = String.valueOf(session.getRemoteAddress());
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        @Override
+        public String getUser() {
+            return session.isAuthenticated() ? session.getUsername() : null;
+        }
+
+        @Override
+        public int getOpenChannels() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : stats.getOpenChannels();
+        }
+
+        @Override
+        public long getBytesIn() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : stats.getBytesIn();
+        }
+
+        @Override
+        public long getBytesOut() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : stats.getBytesOut();
+        }
+
+        @Override
+        public long getAgeMillis() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : System.currentTimeMillis() - stats.getCreatedMillis();
+        }
+
+        @Override
+        public double getCompressionRatio() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : stats.getCompressionRatio();
+        }
+
+        @Override
+        public long getCompressionCpuMillis() {
+            SessionStats stats = SessionStats.of(session);
+            return stats == null ? 0 : TimeUnit.NANOSECONDS.toMillis(stats.getCompressionCpuNanos());
+        }
+
+        @Override
+        public void close() {
+            session.close(true);
+        }
+    }
+
+    private final class SessionTracker implements SessionListener {
+        @Override
+        public void sessionCreated(Session session) {
+            if (!server.running) {
+                return; // server is shutting down
+            }
+            try {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Session,id=" + sessionIds.incrementAndGet());
+                sessions.put(session, name);
+                registerQuietly(new SessionBean(session), name);
+            } catch (MalformedObjectNameException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public void sessionClosed(Session session) {
+            ObjectName name = sessions.remove(session);
+            if (name != null) {
+                unregisterQuietly(name);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SshdJmx.class.getName());
+}
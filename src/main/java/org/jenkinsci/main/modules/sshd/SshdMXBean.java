@@ -0,0 +1,31 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+/**
+ * JMX view of the running SSH server.
+ *
+ * @see SshdJmx
+ */
+@Restricted(NoExternalUse.class)
+public interface SshdMXBean {
+    int getPort();
+
+    boolean isRunning();
+
+    String[] getCiphers();
+
+    String[] getKeyExchanges();
+
+    String[] getMacs();
+
+    /**
+     * Idle timeout in milliseconds, 0 if disabled.
+     */
+    long getIdleTimeout();
+
+    long getActiveSessions();
+
+    long getActiveChannels();
+}
@@ -0,0 +1,379 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONObject;
+import org.apache.sshd.common.channel.Channel;
+import org.apache.sshd.common.channel.ChannelListener;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.SshServer;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the SSH server, published by {@link SshdMetricsAction}.
+ *
+ * <p>
+ * Everything is recorded into {@link LongAdder}s, so recording is cheap and never blocks.
+ * Reading is comparatively expensive, but only happens when metrics are scraped.
+ */
+@Restricted(NoExternalUse.class)
+public final class SshdMetrics {
+    private static final SshdMetrics INSTANCE = new SshdMetrics();
+
+    /**
+     * Commands beyond this many distinct names are accounted together, so that a client sending
+     * random command names cannot make us allocate one histogram per name.
+     */
+    private static final int MAX_COMMAND_NAMES = SystemProperties.getInteger(SshdMetrics.class.getName() + ".maxCommandNames", 200);
+    static final String OTHER_COMMANDS = "other";
+
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder totalSessions = new LongAdder();
+    private final LongAdder activeChannels = new LongAdder();
+    private final LongAdder authSuccesses = new LongAdder();
+    private final LongAdder authFailures = new LongAdder();
+    private final LongAdder keyRejections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionCpuNanos = new LongAdder();
+    private final LatencyHistogram handshake = new LatencyHistogram();
+    private final LatencyHistogram authentication = new LatencyHistogram();
+    private final LatencyHistogram authorizationQueue = new LatencyHistogram();
+    private final LatencyHistogram authorization = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+
+    SshdMetrics() {
+    }
+
+    @NonNull
+    public static SshdMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts tracking the sessions and channels of the given server.
+     */
+    void install(@NonNull SshServer sshd) {
+        sshd.addSessionListener(new SessionTracker());
+        sshd.addChannelListener(new ChannelTracker());
+    }
+
+    /**
+     * Records one call of the public key authenticator.
+     * A rejected key is not a failed authentication yet: clients offer their keys in turn until one is accepted.
+     */
+    void authenticationAttempted(long nanos, boolean success) {
+        authentication.record(nanos);
+        if (!success) {
+            keyRejections.increment();
+        }
+    }
+
+    /**
+     * Records the final outcome of an authentication whose public key was accepted.
+     */
+    void authenticationCompleted(boolean success) {
+        if (!success) {
+            authFailures.increment();
+        }
+    }
+
+    /**
+     * Records how long a security realm check waited for a thread of {@link AuthenticationExecutor}.
+     */
+    void authorizationQueued(long nanos) {
+        authorizationQueue.record(nanos);
+    }
+
+    /**
+     * Records one security realm check run by {@link AuthenticationExecutor}.
+     */
+    void authorizationCompleted(long nanos) {
+        authorization.record(nanos);
+    }
+
+    void commandCompleted(@NonNull String name, long nanos) {
+        LatencyHistogram h = commands.get(name);
+        if (h == null) {
+            h = commands.size() < MAX_COMMAND_NAMES
+                    ? commands.computeIfAbsent(name, k -> new LatencyHistogram())
+                    : commands.computeIfAbsent(OTHER_COMMANDS, k -> new LatencyHistogram());
+        }
+        h.record(nanos);
+    }
+
+    void bytesIn(@CheckForNull Session session, long n) {
+        bytesIn.add(n);
+        SessionStats stats = SessionStats.of(session);
+        if (stats != null) {
+            stats.addBytesIn(n);
+        }
+    }
+
+    void bytesOut(@CheckForNull Session session, long n) {
+        bytesOut.add(n);
+        SessionStats stats = SessionStats.of(session);
+        if (stats != null) {
+            stats.addBytesOut(n);
+        }
+    }
+
+    /**
+     * Records packets compressed or decompressed by {@link SessionCompression}.
+     */
+    void compressed(@CheckForNull Session session, long uncompressed, long compressed, long cpuNanos) {
+        uncompressedBytes.add(uncompressed);
+        compressedBytes.add(compressed);
+        compressionCpuNanos.add(cpuNanos);
+        SessionStats stats = SessionStats.of(session);
+        if (stats != null) {
+            stats.addCompressed(uncompressed, compressed, cpuNanos);
+        }
+    }
+
+    void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    public long getActiveChannels() {
+        return activeChannels.sum();
+    }
+
+    public long getAuthSuccesses() {
+        return authSuccesses.sum();
+    }
+
+    public long getAuthFailures() {
+        return authFailures.sum();
+    }
+
+    public long getKeyRejections() {
+        return keyRejections.sum();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @NonNull
+    public LatencyHistogram.Snapshot getHandshakeLatency() {
+        return handshake.snapshot();
+    }
+
+    @NonNull
+    public LatencyHistogram.Snapshot getAuthenticationLatency() {
+        return authentication.snapshot();
+    }
+
+    @NonNull
+    public LatencyHistogram.Snapshot getAuthorizationQueueLatency() {
+        return authorizationQueue.snapshot();
+    }
+
+    @NonNull
+    public LatencyHistogram.Snapshot getAuthorizationLatency() {
+        return authorization.snapshot();
+    }
+
+    @NonNull
+    public Map<String, LatencyHistogram.Snapshot> getCommandLatencies() {
+        Map<String, LatencyHistogram.Snapshot> result = new TreeMap<>();
+        commands.forEach((name, h) -> result.put(name, h.snapshot()));
+        return result;
+    }
+
+    @NonNull
+    JSONObject toJson() {
+        JSONObject commandsJson = new JSONObject();
+        getCommandLatencies().forEach((name, s) -> commandsJson.put(name, toJson(s)));
+        CommandExecutor executor = CommandExecutor.get();
+        AuthenticationExecutor authExecutor = AuthenticationExecutor.get();
+        return new JSONObject()
+                .element("sessions", new JSONObject()
+                        .element("active", getActiveSessions())
+                        .element("total", totalSessions.sum())
+                        .element("rejected", getRejectedConnections()))
+                .element("channels", new JSONObject().element("active", getActiveChannels()))
+                .element("authentication", new JSONObject()
+                        .element("successes", getAuthSuccesses())
+                        .element("failures", getAuthFailures())
+                        .element("keyRejections", getKeyRejections())
+                        .element("active", authExecutor.getActiveCount())
+                        .element("queued", authExecutor.getQueueDepth())
+                        .element("rejected", authExecutor.getRejectedCount())
+                        .element("timedOut", authExecutor.getTimedOutCount()))
+                .element("bytes", new JSONObject()
+                        .element("in", bytesIn.sum())
+                        .element("out", bytesOut.sum()))
+                .element("compression", new JSONObject()
+                        .element("uncompressedBytes", uncompressedBytes.sum())
+                        .element("compressedBytes", compressedBytes.sum())
+                        .element("cpuMillis", compressionCpuNanos.sum() / 1_000_000.0))
+                .element("executor", new JSONObject()
+                        .element("active", executor.getActiveCount())
+                        .element("queued", executor.getQueueDepth())
+                        .element("rejected", executor.getRejectedCount()))
+                .element("handshakeLatency", toJson(getHandshakeLatency()))
+                .element("authenticationLatency", toJson(getAuthenticationLatency()))
+                .element("authorizationQueueLatency", toJson(getAuthorizationQueueLatency()))
+                .element("authorizationLatency", toJson(getAuthorizationLatency()))
+                .element("commandLatency", commandsJson);
+    }
+
+    private static JSONObject toJson(LatencyHistogram.Snapshot s) {
+        return new JSONObject()
+                .element("count", s.getCount())
+                .element("sumMillis", s.getSumNanos() / 1_000_000.0)
+                .element("p50Millis", quantileMillis(s, 0.5))
+                .element("p99Millis", quantileMillis(s, 0.99))
+                .element("p999Millis", quantileMillis(s, 0.999));
+    }
+
+    /**
+     * JSON has no infinity, so a quantile beyond the largest bucket is reported as a string.
+     */
+    private static Object quantileMillis(LatencyHistogram.Snapshot s, double q) {
+        long nanos = s.getQuantile(q);
+        return nanos == Long.MAX_VALUE ? "Infinity" : (Object) (nanos / 1_000_000.0);
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    void writePrometheus(@NonNull PrintWriter w) {
+        gauge(w, "jenkins_sshd_sessions_active", "Open SSH sessions", getActiveSessions());
+        counter(w, "jenkins_sshd_sessions_total", "SSH sessions opened since startup", totalSessions.sum());
+        counter(w, "jenkins_sshd_connections_rejected_total", "SSH connections refused by the server", getRejectedConnections());
+        gauge(w, "jenkins_sshd_channels_active", "Open SSH channels", getActiveChannels());
+        counter(w, "jenkins_sshd_auth_successes_total", "Successfully authenticated SSH sessions", getAuthSuccesses());
+        counter(w, "jenkins_sshd_auth_failures_total", "SSH authentications failed after the public key was accepted", getAuthFailures());
+        counter(w, "jenkins_sshd_key_rejections_total", "Public keys offered by SSH clients and rejected", getKeyRejections());
+        counter(w, "jenkins_sshd_auth_rejected_total", "SSH authentications refused because too many were pending",
+                AuthenticationExecutor.get().getRejectedCount());
+        counter(w, "jenkins_sshd_auth_timeouts_total", "SSH authentications given up on because the security realm was too slow",
+                AuthenticationExecutor.get().getTimedOutCount());
+        counter(w, "jenkins_sshd_command_input_bytes_total", "Bytes read by SSH commands", bytesIn.sum());
+        counter(w, "jenkins_sshd_command_output_bytes_total", "Bytes written by SSH commands", bytesOut.sum());
+        counter(w, "jenkins_sshd_compression_uncompressed_bytes_total", "Size of SSH packets before compression or after decompression",
+                uncompressedBytes.sum());
+        counter(w, "jenkins_sshd_compression_compressed_bytes_total", "Size of compressed SSH packets", compressedBytes.sum());
+        header(w, "jenkins_sshd_compression_cpu_seconds_total", "CPU time spent compressing and decompressing SSH packets", "counter");
+        w.append("jenkins_sshd_compression_cpu_seconds_total ").println(compressionCpuNanos.sum() / 1e9);
+        counter(w, "jenkins_sshd_commands_rejected_total", "SSH commands rejected because the executor was saturated",
+                CommandExecutor.get().getRejectedCount());
+        histogram(w, "jenkins_sshd_handshake_seconds", "Time from connection to key exchange completion", null,
+                Map.of("", getHandshakeLatency()));
+        histogram(w, "jenkins_sshd_auth_seconds", "Time spent checking a public key", null,
+                Map.of("", getAuthenticationLatency()));
+        histogram(w, "jenkins_sshd_auth_queue_seconds", "Time a security realm check waited for a thread", null,
+                Map.of("", getAuthorizationQueueLatency()));
+        histogram(w, "jenkins_sshd_auth_realm_seconds", "Time spent checking a user with the security realm", null,
+                Map.of("", getAuthorizationLatency()));
+        histogram(w, "jenkins_sshd_command_seconds", "Duration of SSH commands", "command", getCommandLatencies());
+        w.flush();
+    }
+
+    private static void gauge(PrintWriter w, String name, String help, long value) {
+        header(w, name, help, "gauge");
+        w.append(name).append(' ').println(value);
+    }
+
+    private static void counter(PrintWriter w, String name, String help, long value) {
+        header(w, name, help, "counter");
+        w.append(name).append(' ').println(value);
+    }
+
+    private static void histogram(PrintWriter w, String name, String help, @CheckForNull String label,
+                                  Map<String, LatencyHistogram.Snapshot> snapshots) {
+        header(w, name, help, "histogram");
+        long[] bounds = LatencyHistogram.getBounds();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> e : snapshots.entrySet()) {
+            String labels = label == null ? "" : label + "=\"" + escape(e.getKey()) + "\",";
+            long[] counts = e.getValue().getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts[i];
+                w.append(name).append("_bucket{").append(labels)
+                        .append("le=\"").append(String.format(Locale.ROOT, "%.4f", bounds[i] / 1e9)).append("\"} ")
+                        .println(cumulative);
+            }
+            w.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").println(e.getValue().getCount());
+            String plain = label == null ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+            w.append(name).append("_sum").append(plain).append(' ').println(e.getValue().getSumNanos() / 1e9);
+            w.append(name).append("_count").append(plain).append(' ').println(e.getValue().getCount());
+        }
+    }
+
+    private static void header(PrintWriter w, String name, String help, String type) {
+        w.append("# HELP ").append(name).append(' ').println(help);
+        w.append("# TYPE ").append(name).append(' ').println(type);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private final class SessionTracker implements SessionListener {
+        @Override
+        public void sessionCreated(Session session) {
+            SessionStats.attach(session);
+            activeSessions.increment();
+            totalSessions.increment();
+        }
+
+        @Override
+        public void sessionEvent(Session session, Event event) {
+            if (event == Event.KeyEstablished) {
+                SessionStats stats = SessionStats.of(session);
+                if (stats != null && stats.keyEstablished()) {
+                    handshake.record(System.nanoTime() - stats.getCreatedNanos());
+                }
+            } else if (event == Event.Authenticated) {
+                authSuccesses.increment();
+            }
+        }
+
+        @Override
+        public void sessionClosed(Session session) {
+            activeSessions.decrement();
+        }
+    }
+
+    private final class ChannelTracker implements ChannelListener {
+        @Override
+        public void channelInitialized(Channel channel) {
+            activeChannels.increment();
+            SessionStats stats = SessionStats.of(channel.getSession());
+            if (stats != null) {
+                stats.openChannels().incrementAndGet();
+            }
+        }
+
+        @Override
+        public void channelClosed(Channel channel, Throwable reason) {
+            activeChannels.decrement();
+            SessionStats stats = SessionStats.of(channel.getSession());
+            if (stats != null) {
+                stats.openChannels().decrementAndGet();
+            }
+        }
+    }
+}
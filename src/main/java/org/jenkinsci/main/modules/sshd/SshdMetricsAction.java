@@ -0,0 +1,47 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import org.kohsuke.stapler.verb.GET;
+
+import java.io.IOException;
+
+/**
+ * Publishes {@link SshdMetrics} at {@code /sshd/metrics}, as JSON or, with {@code ?format=prometheus},
+ * in the Prometheus text format.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class SshdMetricsAction implements RootAction {
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "SSH server";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "sshd";
+    }
+
+    @GET
+    public void doMetrics(StaplerRequest2 req, StaplerResponse2 rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.SYSTEM_READ);
+        if ("prometheus".equals(req.getParameter("format"))) {
+            rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+            SshdMetrics.get().writePrometheus(rsp.getWriter());
+        } else {
+            rsp.setContentType("application/json;charset=UTF-8");
+            SshdMetrics.get().toJson().write(rsp.getWriter());
+        }
+    }
+}
@@ -5,7 +5,6 @@ import jenkins.model.Jenkins;
 import org.apache.sshd.server.auth.UserAuth;
 import org.apache.sshd.server.auth.UserAuthFactory;
 import org.apache.sshd.server.auth.UserAuthNoneFactory;
-import org.apache.sshd.server.auth.pubkey.UserAuthPublicKeyFactory;
 import org.apache.sshd.server.session.ServerSession;
 
 /**
@@ -14,7 +13,7 @@ import org.apache.sshd.server.session.ServerSession;
  * @author Kohsuke Kawaguchi
  */
 class UserAuthNamedFactory implements UserAuthFactory {
-    UserAuthFactory publicKey = UserAuthPublicKeyFactory.INSTANCE;
+    UserAuthFactory publicKey = AsyncUserAuthPublicKey.FACTORY;
     UserAuthFactory none = UserAuthNoneFactory.INSTANCE;
 
     private UserAuthFactory select() {
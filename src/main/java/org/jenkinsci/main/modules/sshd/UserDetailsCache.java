@@ -0,0 +1,112 @@
+package org.jenkinsci.main.modules.sshd;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.User;
+import jenkins.util.SystemProperties;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Briefly remembers what the {@link hudson.security.SecurityRealm} said about SSH users.
+ *
+ * <p>
+ * Looking up a user in an LDAP or Active Directory realm is a network round trip, and a single SSH login
+ * used to do several: the public key is checked twice by most clients, and then every command impersonated
+ * the user again. With this cache, they share one lookup as long as they happen within the TTL.
+ *
+ * <p>
+ * Only successful lookups are cached, and saving or deleting a user drops its entry.
+ * A user disabled in the realm itself may still log in until the entry expires, so the TTL is kept short.
+ */
+@Restricted(NoExternalUse.class)
+public final class UserDetailsCache {
+    private static final UserDetailsCache INSTANCE = new UserDetailsCache(
+            SystemProperties.getInteger(UserDetailsCache.class.getName() + ".size", 1024),
+            TimeUnit.SECONDS.toNanos(SystemProperties.getLong(UserDetailsCache.class.getName() + ".ttl", 30L)),
+            System::nanoTime);
+
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+
+    UserDetailsCache(int size, long ttlNanos, LongSupplier clock) {
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        int maxEntries = Math.max(1, size);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @NonNull
+    public static UserDetailsCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Same as {@link User#getUserDetailsForImpersonation2()}, but answered from the cache when possible.
+     *
+     * @throws AuthenticationException if the realm does not know the user or considers it unavailable.
+     */
+    @NonNull
+    public UserDetails getUserDetails(@NonNull User user) throws AuthenticationException {
+        if (ttlNanos <= 0) {
+            return user.getUserDetailsForImpersonation2();
+        }
+        String key = User.idStrategy().keyFor(user.getId());
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null && now - e.expires < 0) {
+                return e.details;
+            }
+        }
+        // not holding the lock, as this may take a while
+        UserDetails details = user.getUserDetailsForImpersonation2();
+        synchronized (entries) {
+            entries.put(key, new Entry(details, now + ttlNanos));
+        }
+        return details;
+    }
+
+    /**
+     * Same as {@link User#impersonate2()}, but using the cached {@link UserDetails}.
+     */
+    @NonNull
+    public Authentication impersonate(@NonNull User user) throws AuthenticationException {
+        return user.impersonate2(getUserDetails(user));
+    }
+
+    void invalidate(@NonNull String userKey) {
+        synchronized (entries) {
+            entries.remove(userKey);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static final class Entry {
+        final UserDetails details;
+        final long expires;
+
+        Entry(UserDetails details, long expires) {
+            this.details = details;
+            this.expires = expires;
+        }
+    }
+}
@@ -3,3 +3,6 @@ package org.jenkinsci.main.modules.sshd.PortAdvertiser;
 def v = my.endpoint;
 if (v!=null)
     response2.addHeader("X-SSH-Endpoint",v);
+def k = my.hostKeyFingerprint;
+if (k!=null)
+    response2.addHeader("X-SSH-Host-Key-Fingerprint",k);
@@ -6,4 +6,28 @@ f.section(title:_("SSH Server")) {
     f.entry(title:_("SSHD Port"),field:"port") {
         f.serverTcpPort()
     }
+    f.advanced {
+        f.entry(title:_("Run commands on virtual threads"),field:"useVirtualThreads") {
+            f.checkbox()
+        }
+        f.entry(title:_("Allow interactive shell"),field:"allowShell") {
+            f.checkbox()
+        }
+        f.entry(title:_("Ciphers"),field:"ciphers") {
+            f.textbox(checkMethod:"post")
+        }
+        f.entry(title:_("MACs"),field:"macs") {
+            f.textbox(checkMethod:"post")
+        }
+        f.entry(title:_("Key exchanges"),field:"keyExchanges") {
+            f.textbox(checkMethod:"post")
+        }
+        f.entry(title:_("Cipher provider"),field:"cipherProvider") {
+            f.select()
+        }
+        f.entry(title:_("MAC provider"),field:"macProvider") {
+            f.select()
+        }
+        f.validateButton(title:_("Measure cipher and MAC throughput per provider"),progress:_("Measuring..."),method:"measureAlgorithms")
+    }
 }
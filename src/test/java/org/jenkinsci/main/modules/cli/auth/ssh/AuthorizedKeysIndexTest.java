@@ -0,0 +1,75 @@
+package org.jenkinsci.main.modules.cli.auth.ssh;
+
+import hudson.model.User;
+import org.jenkinsci.main.modules.sshd.TestKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class AuthorizedKeysIndexTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void userChangedWhileDown() throws Exception {
+        User alice = User.getById("alice", true);
+        PublicKey oldKey = TestKeys.register(alice).getPublic();
+        // file systems with coarse timestamps could otherwise give the index the same one as the users
+        backdateUsers(System.currentTimeMillis() - 60_000);
+        AuthorizedKeysIndex.get().save();
+
+        AuthorizedKeysIndex loaded = new AuthorizedKeysIndex();
+        assertTrue(loaded.load(), "the persisted index is used");
+        assertEquals(alice, loaded.findUser(oldKey));
+
+        // a fresh index does not see this save, like after a restart
+        PublicKey newKey = TestKeys.register(alice).getPublic();
+        assertTrue(index().setLastModified(System.currentTimeMillis() - 30_000));
+
+        AuthorizedKeysIndex rebuilt = new AuthorizedKeysIndex();
+        assertFalse(rebuilt.load(), "the persisted index is stale");
+        assertEquals(alice, rebuilt.findUser(newKey));
+        assertNull(rebuilt.findUser(oldKey));
+    }
+
+    @Test
+    void corruptIndexIsRebuilt() throws Exception {
+        User alice = User.getById("alice", true);
+        PublicKey key = TestKeys.register(alice).getPublic();
+        backdateUsers(System.currentTimeMillis() - 60_000);
+        Files.write(index().toPath(), new byte[] {1, 2, 3});
+
+        AuthorizedKeysIndex rebuilt = new AuthorizedKeysIndex();
+        assertFalse(rebuilt.load());
+        assertEquals(alice, rebuilt.findUser(key));
+    }
+
+    private File index() {
+        return new File(r.jenkins.getRootDir(), "sshd-authorized-keys.idx");
+    }
+
+    private void backdateUsers(long stamp) throws IOException {
+        try (Stream<Path> files = Files.walk(new File(r.jenkins.getRootDir(), "users").toPath())) {
+            files.filter(Files::isRegularFile).forEach(f -> assertTrue(f.toFile().setLastModified(stamp)));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.jenkinsci.main.modules.cli.auth.ssh;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.main.modules.sshd.TestKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link UserPropertyImpl#has} and {@link UserPropertyImpl#isAuthorizedKey} with a varying number of keys.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserPropertyImplBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+        @Param({"1", "10", "20"})
+        public int keyCount;
+
+        UserPropertyImpl property;
+        PublicKey registeredKey;
+        String registeredKeyString;
+        PublicKey unknownKey;
+
+        @Setup
+        public void setup() throws Exception {
+            StringBuilder authorizedKeys = new StringBuilder();
+            for (int i = 0; i < keyCount; i++) {
+                registeredKey = TestKeys.generateRsa().getPublic();
+                registeredKeyString = TestKeys.authorizedKey(registeredKey);
+                authorizedKeys.append(registeredKeyString).append('\n');
+            }
+            property = new UserPropertyImpl(authorizedKeys.toString());
+            unknownKey = TestKeys.generateRsa().getPublic();
+            if (!property.has(registeredKey) || !property.isAuthorizedKey(registeredKeyString)) {
+                throw new IllegalStateException("The registered key is not recognized");
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean hasRegisteredKey(Keys keys) {
+        return keys.property.has(keys.registeredKey);
+    }
+
+    @Benchmark
+    public boolean hasUnknownKey(Keys keys) {
+        return keys.property.has(keys.unknownKey);
+    }
+
+    @Benchmark
+    public boolean isAuthorizedKey(Keys keys) {
+        return keys.property.isAuthorizedKey(keys.registeredKeyString);
+    }
+}
@@ -2,6 +2,7 @@ package org.jenkinsci.main.modules.cli.auth.ssh;
 
 import hudson.model.User;
 import hudson.util.FormValidation;
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
 import org.htmlunit.FailingHttpStatusCodeException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,8 +10,13 @@ import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
+import java.security.PublicKey;
+
 import static org.htmlunit.html.HtmlFormUtil.submit;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @WithJenkins
 class UserPropertyImplTest {
@@ -65,6 +71,49 @@ class UserPropertyImplTest {
         assertCheckOK(FormValidation.Kind.WARNING, PRIVATE_RSA_KEY);
     }
 
+    @Test
+    void hasFollowsAuthorizedKeysChanges() throws Exception {
+        PublicKey rsa = parse(PUBLIC_RSA_KEY);
+        PublicKey rsa2 = parse(PUBLIC_RSA_KEY_2);
+        PublicKey dsa = parse(PUBLIC_DSA_KEY);
+
+        UserPropertyImpl p = new UserPropertyImpl(PUBLIC_RSA_KEY + "\n\n" + PUBLIC_DSA_KEY + "\n");
+        assertTrue(p.has(rsa));
+        assertTrue(p.has(dsa));
+        assertFalse(p.has(rsa2));
+
+        p.authorizedKeys = PUBLIC_RSA_KEY_2;
+        assertFalse(p.has(rsa));
+        assertTrue(p.has(rsa2));
+        assertTrue(p.isAuthorizedKey(PUBLIC_RSA_KEY_2));
+        assertFalse(p.isAuthorizedKey(PUBLIC_DSA_KEY));
+    }
+
+    @Test
+    void findUserFollowsUserChanges() throws Exception {
+        PublicKey rsa = parse(PUBLIC_RSA_KEY);
+        PublicKey rsa2 = parse(PUBLIC_RSA_KEY_2);
+        assertNull(UserPropertyImpl.findUser(rsa));
+
+        User foo = User.getById("foo", true);
+        foo.addProperty(new UserPropertyImpl(PUBLIC_RSA_KEY));
+        User bar = User.getById("bar", true);
+        bar.addProperty(new UserPropertyImpl(PUBLIC_RSA_KEY + "\n" + PUBLIC_RSA_KEY_2));
+        assertEquals(bar, UserPropertyImpl.findUser(rsa));
+        assertEquals(bar, UserPropertyImpl.findUser(rsa2));
+
+        bar.addProperty(new UserPropertyImpl(PUBLIC_RSA_KEY_2));
+        assertEquals(foo, UserPropertyImpl.findUser(rsa));
+
+        foo.delete();
+        assertNull(UserPropertyImpl.findUser(rsa));
+        assertEquals(bar, UserPropertyImpl.findUser(rsa2));
+    }
+
+    private static PublicKey parse(String key) throws Exception {
+        return PublicKeyEntry.parsePublicKeyEntry(key.trim()).resolvePublicKey(null, null, null);
+    }
+
     private void assertCheckOK(FormValidation.Kind kind, String value) throws Exception {
         FormValidation fv = r.jenkins.getDescriptorByType(UserPropertyImpl.DescriptorImpl.class).doCheckAuthorizedKeys(value);
         assertEquals(kind, fv.kind, "check of ‘" + value + "’: " + fv.renderHtml());
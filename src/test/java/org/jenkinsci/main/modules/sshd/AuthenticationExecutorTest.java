@@ -0,0 +1,90 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuthenticationExecutorTest {
+
+    @Test
+    void reportsOutcome() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1, 1, 0);
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        executor.execute("SSH authentication of alice", () -> {
+            threadName.complete(Thread.currentThread().getName());
+            return true;
+        }, result::complete);
+        assertTrue(result.get(10, TimeUnit.SECONDS));
+        assertEquals("SSH authentication of alice", threadName.get());
+
+        CompletableFuture<Boolean> failure = new CompletableFuture<>();
+        executor.execute("SSH authentication of bob", () -> {
+            throw new IllegalStateException("realm is down");
+        }, failure::complete);
+        assertFalse(failure.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1, 1, 0);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute("blocker", () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, ok -> {});
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = new CompletableFuture<>();
+        executor.execute("queued", () -> true, queued::complete);
+        assertEquals(1, executor.getQueueDepth());
+
+        CompletableFuture<Boolean> rejected = new CompletableFuture<>();
+        executor.execute("rejected", () -> true, rejected::complete);
+        assertFalse(rejected.getNow(true));
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        assertTrue(queued.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void timesOut() throws Exception {
+        AuthenticationExecutor executor = new AuthenticationExecutor(1, 1, TimeUnit.MILLISECONDS.toNanos(100));
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger outcomes = new AtomicInteger();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        executor.execute("slow realm", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, success -> {
+            outcomes.incrementAndGet();
+            result.complete(success);
+        });
+        assertFalse(result.get(10, TimeUnit.SECONDS));
+        assertEquals(1, executor.getTimedOutCount());
+        release.countDown();
+
+        // the single thread only runs this once the slow check has returned, whose late answer is dropped
+        CompletableFuture<Boolean> next = new CompletableFuture<>();
+        executor.execute("next", () -> true, next::complete);
+        assertTrue(next.get(10, TimeUnit.SECONDS));
+        assertEquals(1, outcomes.get());
+    }
+}
@@ -0,0 +1,141 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class BatchCommandFactoryTest {
+
+    private JenkinsRule r;
+    private KeyPair keyPair;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        r = rule;
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        keyPair = TestKeys.register(User.getById("alice", true));
+    }
+
+    @Test
+    void runsCommandsInSequence() throws Exception {
+        Result result = batch("batch", "who-am-i\n\nno-such-command\nwho-am-i\n");
+        assertEquals(1, result.exitCode);
+        assertEquals(Map.of(1, 0, 3, 255, 4, 0), result.exitCodes);
+        assertTrue(result.stdout.get(1).contains("Authenticated as: alice"), result.stdout.get(1));
+        assertTrue(result.stdout.get(4).contains("Authenticated as: alice"), result.stdout.get(4));
+        assertTrue(result.stderr.get(3).contains("Unknown command: no-such-command"), result.stderr.get(3));
+    }
+
+    @Test
+    void runsCommandsInParallel() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            input.append("who-am-i\n");
+        }
+        Result result = batch("batch --parallel 4", input.toString());
+        assertEquals(0, result.exitCode);
+        assertEquals(10, result.exitCodes.size());
+        for (int seq = 1; seq <= 10; seq++) {
+            assertEquals(0, result.exitCodes.get(seq));
+            assertTrue(result.stdout.get(seq).contains("Authenticated as: alice"), result.stdout.get(seq));
+        }
+    }
+
+    @Test
+    void rejectsInvalidParallelism() throws Exception {
+        Result result = batch("batch --parallel 0", "who-am-i\n");
+        assertEquals(2, result.exitCode);
+        assertTrue(result.exitCodes.isEmpty());
+    }
+
+    private Result batch(String command, String input) throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.addPublicKeyIdentity(keyPair);
+                session.auth().verify(10, TimeUnit.SECONDS);
+                try (ChannelExec channel = session.createExecChannel(command)) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    channel.setIn(new ByteArrayInputStream(input.getBytes(Charset.defaultCharset())));
+                    channel.setOut(out);
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(10, TimeUnit.SECONDS);
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    return new Result(channel.getExitStatus(), out.toByteArray());
+                }
+            }
+        }
+    }
+
+    /**
+     * The frames sent by a batch, gathered per command.
+     */
+    private static final class Result {
+        final int exitCode;
+        final Map<Integer, String> stdout = new HashMap<>();
+        final Map<Integer, String> stderr = new HashMap<>();
+        final Map<Integer, Integer> exitCodes = new HashMap<>();
+
+        Result(int exitCode, byte[] frames) throws Exception {
+            this.exitCode = exitCode;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(frames));
+            while (true) {
+                int type;
+                try {
+                    type = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int seq = in.readInt();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                assertTrue(!exitCodes.containsKey(seq), "frame after the exit of command " + seq);
+                switch (type) {
+                    case BatchCommandFactory.STDOUT:
+                        stdout.merge(seq, new String(payload, Charset.defaultCharset()), String::concat);
+                        break;
+                    case BatchCommandFactory.STDERR:
+                        stderr.merge(seq, new String(payload, Charset.defaultCharset()), String::concat);
+                        break;
+                    case BatchCommandFactory.EXIT:
+                        exitCodes.put(seq, ByteBuffer.wrap(payload).getInt());
+                        break;
+                    default:
+                        throw new AssertionError("Unexpected frame type " + type);
+                }
+            }
+        }
+    }
+}
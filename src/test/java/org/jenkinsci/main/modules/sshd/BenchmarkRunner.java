@@ -0,0 +1,51 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.BenchmarkFinder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.logging.Logger;
+
+/**
+ * Runs all the {@link jenkins.benchmark.jmh.JmhBenchmark}s of this plugin.
+ *
+ * <p>
+ * Skipped during regular builds; run it with {@code mvn test -Dbenchmark}.
+ * Results are written to {@code jmh-report.json}, so that runs against different versions can be compared.
+ * Use {@code -Dbenchmark.include=<regexp>} to run only some of the benchmarks.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = ".*")
+class BenchmarkRunner {
+
+    @Test
+    void runJmhBenchmarks() throws Exception {
+        // modes, units and iteration counts are set on each benchmark class, since these options would override them
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .forks(1)
+                .threads(1)
+                .shouldFailOnError(true)
+                .shouldDoGC(true)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-report.json");
+
+        String include = System.getProperty("benchmark.include");
+        if (include != null && !include.isEmpty()) {
+            options.include(include);
+        } else {
+            new BenchmarkFinder(getClass()).findBenchmarks(options);
+        }
+        if (!CommandExecutor.isVirtualThreadsSupported()) {
+            LOGGER.info("Virtual threads are not supported on this JVM, skipping their CommandExecutorBenchmark runs");
+            options.param("threads", "platform");
+        }
+        new Runner(options.build()).run();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BenchmarkRunner.class.getName());
+}
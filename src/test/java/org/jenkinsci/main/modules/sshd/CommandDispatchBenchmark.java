@@ -0,0 +1,78 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.ExtensionList;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.apache.sshd.server.command.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link CommandFactoryImpl#createCommand} scales with the number of registered {@link SshCommandFactory}s.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommandDispatchBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        @Param({"0", "10", "100"})
+        public int extraFactories;
+
+        final CommandFactoryImpl factory = new CommandFactoryImpl();
+
+        @Override
+        public void setup() {
+            ExtensionList<SshCommandFactory> all = SshCommandFactory.all();
+            for (int i = 0; i < extraFactories; i++) {
+                all.add(new UnrelatedFactory("unrelated-" + i));
+            }
+            all.add(new UnrelatedFactory("bench-target") {
+                @Override
+                public Command create(CommandLine commandLine) {
+                    return name.equals(commandLine.get(0)) ? new InvalidCommand(name) : null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Stands for a plugin-contributed factory that does not handle the benchmarked commands.
+     */
+    static class UnrelatedFactory extends SshCommandFactory {
+        final String name;
+
+        UnrelatedFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Command cliCommand(JenkinsState state) {
+        return state.factory.createCommand(null, "who-am-i");
+    }
+
+    @Benchmark
+    public Command lastFactory(JenkinsState state) {
+        return state.factory.createCommand(null, "bench-target --flag value");
+    }
+
+    @Benchmark
+    public Command unknownCommand(JenkinsState state) {
+        return state.factory.createCommand(null, "no-such-command");
+    }
+}
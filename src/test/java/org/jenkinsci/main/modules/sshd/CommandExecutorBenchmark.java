@@ -0,0 +1,89 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform and virtual threads in {@link CommandExecutor} with many concurrent commands that just wait,
+ * like {@code build -s} or a Git transfer blocked on the network.
+ *
+ * <p>
+ * Each invocation starts all the commands, waits until they are all parked, then releases them.
+ * The heap used while they are all parked is reported per command; note that platform thread stacks live outside
+ * the heap, so their footprint is underestimated there.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CommandExecutorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Executor {
+        @Param({"platform", "virtual"})
+        public String threads;
+
+        @Param({"10000"})
+        public int commands;
+
+        CommandExecutor executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = new CommandExecutor(0, commands, 0, commands);
+            executor.setUseVirtualThreads("virtual".equals(threads));
+            if ("virtual".equals(threads) && !executor.isUseVirtualThreads()) {
+                // rather than measuring platform threads under the wrong label; BenchmarkRunner skips this case
+                throw new IllegalStateException("Virtual threads are not supported on this JVM");
+            }
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long heapBytesPerCommand;
+    }
+
+    @Benchmark
+    public void idleCommands(Executor state, Footprint footprint) throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+
+        CountDownLatch parked = new CountDownLatch(state.commands);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(state.commands);
+        for (int i = 0; i < state.commands; i++) {
+            state.executor.execute(() -> {
+                parked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "SSH command: idle " + i);
+        }
+        parked.await();
+
+        footprint.heapBytesPerCommand = (runtime.totalMemory() - runtime.freeMemory() - heapBefore) / state.commands;
+        release.countDown();
+        done.await();
+    }
+}
@@ -0,0 +1,60 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandExecutorTest {
+
+    @Test
+    void rejectsWhenSaturated() throws Exception {
+        CommandExecutor executor = new CommandExecutor(0, 1, 0, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> threadName = new CompletableFuture<>();
+        executor.execute(() -> {
+            threadName.complete(Thread.currentThread().getName());
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "SSH command: blocker");
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        assertEquals("SSH command: blocker", threadName.get());
+        assertEquals(1, executor.getActiveCount());
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}, "SSH command: rejected"));
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+    }
+
+    @Test
+    void queuesUpToQueueSize() throws Exception {
+        CommandExecutor executor = new CommandExecutor(1, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocker = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        executor.execute(blocker, "first");
+        executor.execute(blocker, "second");
+        assertEquals(1, executor.getQueueDepth());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(blocker, "third"));
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@WithJenkins
+class CommandFactoryImplTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void onlyMatchingFactoriesAreAsked() {
+        CommandFactoryImpl factory = new CommandFactoryImpl();
+        Declared declared = SshCommandFactory.all().get(Declared.class);
+        Undeclared undeclared = SshCommandFactory.all().get(Undeclared.class);
+
+        assertSame(declared.command, factory.createCommand(null, "hello world"));
+        assertEquals(1, declared.calls);
+
+        int undeclaredCalls = undeclared.calls;
+        assertInstanceOf(AsynchronousCommand.class, factory.createCommand(null, "who-am-i"));
+        assertEquals(1, declared.calls);
+        assertEquals(undeclaredCalls + 1, undeclared.calls);
+
+        assertSame(declared.command, factory.createCommand(null, "hello-again"));
+        assertEquals(2, declared.calls);
+
+        undeclaredCalls = undeclared.calls;
+        assertInstanceOf(InvalidCommand.class, factory.createCommand(null, "no-such-command"));
+        assertEquals(2, declared.calls);
+        assertEquals(undeclaredCalls + 1, undeclared.calls);
+    }
+
+    @Test
+    void followsExtensionListChanges() {
+        CommandFactoryImpl factory = new CommandFactoryImpl();
+        assertInstanceOf(InvalidCommand.class, factory.createCommand(null, "hello"));
+
+        Declared late = new Declared();
+        SshCommandFactory.all().add(late);
+        assertSame(late.command, factory.createCommand(null, "hello"));
+    }
+
+    @TestExtension("onlyMatchingFactoriesAreAsked")
+    public static class Declared extends SshCommandFactory {
+        final Command command = new InvalidCommand("hello");
+        int calls;
+
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("hello");
+        }
+
+        @Override
+        public Set<String> getCommandPrefixes() {
+            return Set.of("hello-");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            calls++;
+            return command;
+        }
+    }
+
+    @TestExtension("onlyMatchingFactoriesAreAsked")
+    public static class Undeclared extends SshCommandFactory {
+        int calls;
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            calls++;
+            return null;
+        }
+    }
+}
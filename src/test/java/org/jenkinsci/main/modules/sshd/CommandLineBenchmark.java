@@ -0,0 +1,41 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.main.modules.sshd.SshCommandFactory.CommandLine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the tokenization done by {@link CommandLine}.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommandLineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Lines {
+        @Param({
+                "who-am-i",
+                "build -s -v -p BRANCH=main -p MESSAGE=\"hello world\" folder/job",
+                "git-upload-pack '/some/repository/with a space.git'"
+        })
+        public String line;
+    }
+
+    @Benchmark
+    public int tokenize(Lines lines) {
+        return new CommandLine(lines.line).size();
+    }
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionThrottleTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private ConnectionThrottle throttle(ConnectionThrottle.Limit perAddress, ConnectionThrottle.Limit perRange) {
+        return new ConnectionThrottle(perAddress, perRange, 24, 64, TimeUnit.SECONDS.toNanos(8), 1024, clock::get);
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    void perAddressBurstThenRate() throws Exception {
+        ConnectionThrottle t = throttle(new ConnectionThrottle.Limit(2, 3), new ConnectionThrottle.Limit(0, 0));
+        InetAddress a = InetAddress.getByName("10.0.0.1");
+        InetAddress b = InetAddress.getByName("10.0.0.2");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(t.tryAcquire(a));
+        }
+        assertFalse(t.tryAcquire(a));
+        assertTrue(t.tryAcquire(b), "other addresses are not affected");
+
+        // blocked for a second even though a token is refilled after half of it
+        advance(900);
+        assertFalse(t.tryAcquire(a));
+        advance(200);
+        assertTrue(t.tryAcquire(a));
+    }
+
+    @Test
+    void penaltyDoubles() throws Exception {
+        ConnectionThrottle t = throttle(new ConnectionThrottle.Limit(1, 1), new ConnectionThrottle.Limit(0, 0));
+        InetAddress a = InetAddress.getByName("10.0.0.1");
+        assertTrue(t.tryAcquire(a));
+        assertFalse(t.tryAcquire(a)); // blocked for 1s
+        advance(1000);
+        assertTrue(t.tryAcquire(a));
+        assertFalse(t.tryAcquire(a)); // blocked for 2s
+        advance(1500);
+        assertFalse(t.tryAcquire(a));
+        advance(500);
+        assertTrue(t.tryAcquire(a));
+        assertFalse(t.tryAcquire(a)); // blocked for 4s
+        advance(8000);
+        assertTrue(t.tryAcquire(a));
+    }
+
+    @Test
+    void negativeClock() throws Exception {
+        clock.set(Long.MIN_VALUE / 2);
+        ConnectionThrottle t = throttle(new ConnectionThrottle.Limit(1, 1), new ConnectionThrottle.Limit(1, 2));
+        InetAddress a = InetAddress.getByName("10.0.0.1");
+        assertTrue(t.tryAcquire(a));
+        assertFalse(t.tryAcquire(a));
+        advance(1000);
+        assertTrue(t.tryAcquire(a));
+    }
+
+    @Test
+    void perRange() throws Exception {
+        ConnectionThrottle t = throttle(new ConnectionThrottle.Limit(0, 0), new ConnectionThrottle.Limit(1, 2));
+        assertTrue(t.tryAcquire(InetAddress.getByName("192.168.1.1")));
+        assertTrue(t.tryAcquire(InetAddress.getByName("192.168.1.2")));
+        assertFalse(t.tryAcquire(InetAddress.getByName("192.168.1.3")));
+        assertTrue(t.tryAcquire(InetAddress.getByName("192.168.2.1")));
+    }
+
+    @Test
+    void rangeRejectionKeepsAddressBudget() throws Exception {
+        ConnectionThrottle t = throttle(new ConnectionThrottle.Limit(1, 2), new ConnectionThrottle.Limit(100, 2));
+        InetAddress busy = InetAddress.getByName("192.168.1.1");
+        InetAddress quiet = InetAddress.getByName("192.168.1.2");
+        assertTrue(t.tryAcquire(busy));
+        assertTrue(t.tryAcquire(busy));
+        assertFalse(t.tryAcquire(quiet), "the range is exhausted");
+        assertFalse(t.tryAcquire(quiet), "the range is blocked");
+
+        // once the range is unblocked, the refused connections have not used up the burst of the address
+        advance(1000);
+        assertTrue(t.tryAcquire(quiet));
+        assertTrue(t.tryAcquire(quiet));
+    }
+
+    @Test
+    void cidrRanges() throws Exception {
+        CidrRange range = CidrRange.parse("192.168.0.0/16");
+        assertTrue(range.contains(InetAddress.getByName("192.168.42.1")));
+        assertFalse(range.contains(InetAddress.getByName("192.169.0.1")));
+        assertFalse(range.contains(InetAddress.getByName("::1")));
+        assertEquals("10.1.2.0/23", CidrRange.parse("10.1.3.4/23").toString());
+        assertEquals(CidrRange.parse("2001:db8::/32"), CidrRange.of(InetAddress.getByName("2001:db8:1::1"), 32));
+        assertTrue(CidrRange.parse("127.0.0.1").contains(InetAddress.getByName("127.0.0.1")));
+        assertThrows(IllegalArgumentException.class, () -> CidrRange.parse("example.com/8"));
+        assertThrows(IllegalArgumentException.class, () -> CidrRange.parse("10.0.0.0/33"));
+    }
+}
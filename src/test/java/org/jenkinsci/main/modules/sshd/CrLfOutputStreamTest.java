@@ -0,0 +1,58 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrLfOutputStreamTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    private JenkinsShell.CrLfOutputStream stream() {
+        return new JenkinsShell.CrLfOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                writes.incrementAndGet();
+                bytes.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes.incrementAndGet();
+                bytes.write(b, off, len);
+            }
+        });
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void translatesLineFeedsInBulk() throws IOException {
+        JenkinsShell.CrLfOutputStream out = stream();
+        byte[] text = ascii("xxone\ntwo\r\n\nthree\nyy");
+        out.write(text, 2, text.length - 4);
+        assertEquals("one\r\ntwo\r\n\r\nthree\r\n", bytes.toString(StandardCharsets.US_ASCII));
+        assertTrue(writes.get() <= 8, "written in runs rather than byte by byte");
+    }
+
+    @Test
+    void remembersCarriageReturnAcrossWrites() throws IOException {
+        JenkinsShell.CrLfOutputStream out = stream();
+        out.write(ascii("one\r"));
+        out.write(ascii("\ntwo"));
+        out.write('\r');
+        out.write(ascii("\n"));
+        out.write('\n');
+        assertEquals("one\r\ntwo\r\n\r\n", bytes.toString(StandardCharsets.US_ASCII));
+    }
+}
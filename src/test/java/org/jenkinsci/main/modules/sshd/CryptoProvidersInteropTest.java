@@ -0,0 +1,152 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that the ciphers and MACs {@link CryptoProviders} pins to a provider talk to the stock client of SSH Core,
+ * over enough traffic in both directions to span many packets.
+ */
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class CryptoProvidersInteropTest {
+
+    private static final String EXCLUDED_MACS = SSHD.class.getName() + ".excludedMacs";
+
+    private JenkinsRule r;
+    private KeyPair keyPair;
+    private SSHD server;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) throws Exception {
+        r = rule;
+        // every ETM MAC, including those excluded by default
+        System.setProperty(EXCLUDED_MACS, "");
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        keyPair = TestKeys.register(User.getById("alice", true));
+        server = SSHD.get();
+        server.setPort(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.stop();
+        System.clearProperty(EXCLUDED_MACS);
+    }
+
+    @Test
+    void pinnedGcmCiphers() throws Exception {
+        List<String> tested = new ArrayList<>();
+        for (BuiltinCiphers cipher : BuiltinCiphers.values()) {
+            if (!cipher.isSupported() || !cipher.getName().contains("-gcm@")) {
+                continue;
+            }
+            for (String provider : CryptoProviders.cipherProviders(cipher).keySet()) {
+                server.setCiphers(cipher.getName());
+                server.setCipherProvider(provider);
+                assertEchoes(List.of(cipher), List.of(BuiltinMacs.hmacsha256)); // not used by AEAD ciphers
+                tested.add(cipher.getName() + " on " + provider);
+            }
+        }
+        assertFalse(tested.isEmpty());
+    }
+
+    @Test
+    void pinnedEncryptThenMacs() throws Exception {
+        List<String> tested = new ArrayList<>();
+        server.setCiphers(BuiltinCiphers.aes128ctr.getName());
+        for (BuiltinMacs mac : BuiltinMacs.values()) {
+            if (!mac.isSupported() || !mac.create().isEncryptThenMac()) {
+                continue;
+            }
+            for (String provider : CryptoProviders.macProviders(mac).keySet()) {
+                server.setMacs(mac.getName());
+                server.setMacProvider(provider);
+                assertEchoes(List.of(BuiltinCiphers.aes128ctr), List.of(mac));
+                tested.add(mac.getName() + " on " + provider);
+            }
+        }
+        assertFalse(tested.isEmpty());
+    }
+
+    private void assertEchoes(List<NamedFactory<Cipher>> ciphers, List<NamedFactory<Mac>> macs) throws Exception {
+        byte[] data = new byte[256 * 1024];
+        ThreadLocalRandom.current().nextBytes(data);
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setCipherFactories(ciphers);
+            client.setMacFactories(macs);
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.addPublicKeyIdentity(keyPair);
+                session.auth().verify(10, TimeUnit.SECONDS);
+                try (ChannelExec channel = session.createExecChannel("echo-bytes")) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    channel.setIn(new ByteArrayInputStream(data));
+                    channel.setOut(out);
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(10, TimeUnit.SECONDS);
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    String algorithms = ciphers + " " + macs;
+                    assertEquals(0, channel.getExitStatus(), algorithms);
+                    assertArrayEquals(data, out.toByteArray(), algorithms);
+                }
+            }
+        }
+    }
+
+    @TestExtension
+    public static class EchoBytes extends SshCommandFactory {
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("echo-bytes");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return new AsynchronousCommand(commandLine) {
+                @Override
+                protected int runCommand() throws Exception {
+                    getInputStream().transferTo(getOutputStream());
+                    getOutputStream().flush();
+                    return 0;
+                }
+            };
+        }
+    }
+}
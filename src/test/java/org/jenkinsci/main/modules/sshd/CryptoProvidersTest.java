@@ -0,0 +1,95 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CryptoProvidersTest {
+
+    @Test
+    void pinnedCiphersMatchSshCore() throws Exception {
+        for (String name : List.of("aes128-gcm@openssh.com", "aes256-gcm@openssh.com", "aes128-ctr", "aes256-ctr")) {
+            assertPinnedCipherMatchesSshCore(name);
+        }
+    }
+
+    private static void assertPinnedCipherMatchesSshCore(String name) throws Exception {
+        NamedFactory<Cipher> builtin = BuiltinCiphers.fromFactoryName(name);
+        NamedFactory<Cipher> pinned = CryptoProviders.cipherProviders(builtin).get("SunJCE");
+        assertEquals(name, pinned.getName());
+
+        Cipher encrypt = pinned.create();
+        Cipher decrypt = builtin.create();
+        byte[] key = random(encrypt.getKdfSize());
+        byte[] iv = random(encrypt.getIVSize());
+        encrypt.init(Cipher.Mode.Encrypt, key, iv);
+        decrypt.init(Cipher.Mode.Decrypt, key, iv);
+        int tag = encrypt.getAuthenticationTagSize();
+        for (int i = 0; i < 3; i++) {
+            byte[] plain = random(4 + 64 + tag);
+            byte[] packet = plain.clone();
+            if (tag > 0) {
+                encrypt.updateWithAAD(packet, 0, 4, 64);
+                decrypt.updateWithAAD(packet, 0, 4, 64);
+            } else {
+                encrypt.update(packet, 4, 64);
+                decrypt.update(packet, 4, 64);
+            }
+            assertArrayEquals(Arrays.copyOf(plain, 4 + 64), Arrays.copyOf(packet, 4 + 64), name + " packet " + i);
+        }
+    }
+
+    @Test
+    void pinnedMacsMatchSshCore() throws Exception {
+        for (String name : List.of("hmac-sha2-256-etm@openssh.com", "hmac-sha2-512", "hmac-sha1-96")) {
+            assertPinnedMacMatchesSshCore(name);
+        }
+    }
+
+    private static void assertPinnedMacMatchesSshCore(String name) throws Exception {
+        NamedFactory<Mac> builtin = BuiltinMacs.fromFactoryName(name);
+        Mac expected = builtin.create();
+        Mac actual = CryptoProviders.macProviders(builtin).get("SunJCE").create();
+        byte[] key = random(expected.getDefaultBlockSize());
+        expected.init(key);
+        actual.init(key);
+        byte[] data = random(100);
+        for (Mac mac : List.of(expected, actual)) {
+            mac.updateUInt(7);
+            mac.update(data, 0, data.length);
+        }
+        byte[] expectedTag = new byte[expected.getBlockSize()];
+        byte[] actualTag = new byte[actual.getBlockSize()];
+        expected.doFinal(expectedTag, 0);
+        actual.doFinal(actualTag, 0);
+        assertArrayEquals(expectedTag, actualTag, name);
+    }
+
+    @Test
+    void leavesUnsupportedAlgorithmsAlone() {
+        List<NamedFactory<Cipher>> factories = List.of(BuiltinCiphers.cc20p1305_openssh, BuiltinCiphers.aes128ctr);
+        List<NamedFactory<Cipher>> pinned = CryptoProviders.pinCiphers(factories, "SunJCE");
+        assertSame(BuiltinCiphers.cc20p1305_openssh, pinned.get(0));
+        assertNotSame(BuiltinCiphers.aes128ctr, pinned.get(1));
+        assertSame(factories, CryptoProviders.pinCiphers(factories, null));
+        assertEquals(factories, CryptoProviders.pinCiphers(factories, "NoSuchProvider"));
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
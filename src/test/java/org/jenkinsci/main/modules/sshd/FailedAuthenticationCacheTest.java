@@ -0,0 +1,68 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.jenkinsci.main.modules.cli.auth.ssh.KeyFingerprint;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailedAuthenticationCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private static KeyFingerprint fingerprint(int b) {
+        byte[] digest = new byte[KeyFingerprint.LENGTH];
+        Arrays.fill(digest, (byte) b);
+        return KeyFingerprint.fromBytes(digest);
+    }
+
+    @Test
+    void expires() {
+        FailedAuthenticationCache cache = new FailedAuthenticationCache(16, 100, clock::get);
+        cache.add("alice", fingerprint(1));
+        assertTrue(cache.contains("alice", fingerprint(1)));
+        assertFalse(cache.contains("alice", fingerprint(2)));
+        assertFalse(cache.contains("bob", fingerprint(1)));
+
+        clock.set(100);
+        assertFalse(cache.contains("alice", fingerprint(1)));
+    }
+
+    @Test
+    void invalidatesUser() {
+        FailedAuthenticationCache cache = new FailedAuthenticationCache(16, 100, clock::get);
+        cache.add("alice", fingerprint(1));
+        cache.add("alice", fingerprint(2));
+        cache.add("bob", fingerprint(1));
+        cache.invalidate("alice");
+        assertFalse(cache.contains("alice", fingerprint(1)));
+        assertFalse(cache.contains("alice", fingerprint(2)));
+        assertTrue(cache.contains("bob", fingerprint(1)));
+    }
+
+    @Test
+    void staysBounded() {
+        FailedAuthenticationCache cache = new FailedAuthenticationCache(16, 100, clock::get);
+        for (int i = 0; i < 10_000; i++) {
+            cache.add("user" + i, fingerprint(1));
+        }
+        int remembered = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (cache.contains("user" + i, fingerprint(1))) {
+                remembered++;
+            }
+        }
+        assertTrue(remembered <= 16, "remembered " + remembered);
+        assertTrue(cache.contains("user9999", fingerprint(1)));
+    }
+
+    @Test
+    void disabledWithoutTtl() {
+        FailedAuthenticationCache cache = new FailedAuthenticationCache(16, 0, clock::get);
+        cache.add("alice", fingerprint(1));
+        assertFalse(cache.contains("alice", fingerprint(1)));
+    }
+}
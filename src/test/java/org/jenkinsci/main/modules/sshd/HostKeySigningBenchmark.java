@@ -0,0 +1,70 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the signature the server computes with its host key during every key exchange,
+ * for the key types {@link HostKeys} can offer.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HostKeySigningBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+        @Param({"rsa", "ecdsa", "ed25519"})
+        public String type;
+
+        Signature signature;
+        final byte[] exchangeHash = new byte[32];
+
+        @Setup
+        public void setup() throws Exception {
+            KeyPairGenerator generator;
+            switch (type) {
+                case "rsa":
+                    generator = KeyPairGenerator.getInstance("RSA");
+                    generator.initialize(2048);
+                    signature = Signature.getInstance("SHA256withRSA");
+                    break;
+                case "ecdsa":
+                    generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    signature = Signature.getInstance("SHA256withECDSA");
+                    break;
+                default:
+                    generator = KeyPairGenerator.getInstance("Ed25519");
+                    signature = Signature.getInstance("Ed25519");
+            }
+            KeyPair key = generator.generateKeyPair();
+            signature.initSign(key.getPrivate());
+            ThreadLocalRandom.current().nextBytes(exchangeHash);
+        }
+    }
+
+    @Benchmark
+    public byte[] sign(Keys keys) throws Exception {
+        keys.signature.update(keys.exchangeHash);
+        return keys.signature.sign();
+    }
+}
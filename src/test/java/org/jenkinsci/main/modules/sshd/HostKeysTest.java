@@ -0,0 +1,72 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class HostKeysTest {
+
+    private static final String ALGORITHMS = HostKeys.class.getName() + ".algorithms";
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ALGORITHMS);
+    }
+
+    @Test
+    void onlyInstanceIdentityByDefault() {
+        List<KeyPair> keys = HostKeys.load();
+        assertEquals(1, keys.size());
+        assertEquals(InstanceIdentity.get().getPublic(), keys.get(0).getPublic());
+    }
+
+    @Test
+    void additionalKeysArePersistedAndPreferred() throws Exception {
+        System.setProperty(ALGORITHMS, "ecdsa, unknown");
+        List<KeyPair> keys = HostKeys.load();
+        assertEquals(2, keys.size());
+        assertEquals(KeyUtils.EC_ALGORITHM, keys.get(0).getPublic().getAlgorithm());
+        assertEquals(InstanceIdentity.get().getPublic(), keys.get(1).getPublic());
+        assertEquals(keys.get(0).getPublic(), HostKeys.load().get(0).getPublic());
+
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.auth().verify(10, TimeUnit.SECONDS);
+                assertEquals(keys.get(0).getPublic(), session.getServerKey());
+            }
+        }
+        assertEquals(HostKeys.fingerprints(keys), server.getHostKeyFingerprints());
+        server.stop();
+    }
+}
@@ -0,0 +1,40 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsDoubleFrom100Micros() {
+        assertEquals(0, LatencyHistogram.indexOf(0));
+        assertEquals(0, LatencyHistogram.indexOf(100_000));
+        assertEquals(1, LatencyHistogram.indexOf(100_001));
+        assertEquals(1, LatencyHistogram.indexOf(200_000));
+        assertEquals(2, LatencyHistogram.indexOf(200_001));
+        assertEquals(LatencyHistogram.getBounds().length, LatencyHistogram.indexOf(TimeUnit.HOURS.toNanos(1)));
+    }
+
+    @Test
+    void quantiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.snapshot().getQuantile(0.5));
+        for (int i = 0; i < 99; i++) {
+            h.record(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        h.record(TimeUnit.MILLISECONDS.toNanos(1));
+
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(100, s.getCount());
+        assertEquals(99 * 50_000L + 1_000_000L, s.getSumNanos());
+        assertEquals(100_000, s.getQuantile(0.5));
+        assertEquals(100_000, s.getQuantile(0.99));
+        assertEquals(1_600_000, s.getQuantile(1));
+
+        h.record(TimeUnit.HOURS.toNanos(1));
+        assertEquals(Long.MAX_VALUE, h.snapshot().getQuantile(1));
+    }
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineEditorTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private LineEditor editor(String input, boolean echo) {
+        return new LineEditor(new StringReader(input), out, StandardCharsets.UTF_8, echo,
+                before -> before.isEmpty() ? List.of("build", "buildy", "help", "who-am-i") : List.of("folder/job", "other"),
+                3);
+    }
+
+    @Test
+    void readsLinesWithAnyLineEnding() throws Exception {
+        LineEditor editor = editor("one\r\ntwo\nthree\rfour", false);
+        assertEquals("one", editor.readLine("> "));
+        assertEquals("two", editor.readLine("> "));
+        assertEquals("three", editor.readLine("> "));
+        assertEquals("four", editor.readLine("> "));
+        assertNull(editor.readLine("> "));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void editsLine() throws Exception {
+        LineEditor editor = editor("helpx\u007f\r" + "garbage\u0015who\u0003help\r" + "\u0004", true);
+        assertEquals("help", editor.readLine("> "));
+        assertEquals("help", editor.readLine("> "));
+        assertNull(editor.readLine("> "));
+        String echoed = out.toString(StandardCharsets.UTF_8);
+        assertTrue(echoed.startsWith("> helpx\b \b\r\n"), echoed);
+        assertTrue(echoed.contains("^C\r\n> "), echoed);
+    }
+
+    @Test
+    void browsesHistory() throws Exception {
+        LineEditor editor = editor("a\rb\rb\rc\rd\r\u001b[A\u001b[A\u001b[B\r", true);
+        for (String expected : List.of("a", "b", "b", "c", "d")) {
+            assertEquals(expected, editor.readLine("> "));
+        }
+        // up twice, then down once, from the newest entry
+        assertEquals("d", editor.readLine("> "));
+        // bounded, without consecutive duplicates
+        assertEquals(List.of("b", "c", "d"), editor.getHistory());
+    }
+
+    @Test
+    void completes() throws Exception {
+        LineEditor editor = editor("he\t\r" + "bu\t\r" + "build f\t\r" + "x\t\r", true);
+        assertEquals("help ", editor.readLine("> "));
+        assertEquals("build", editor.readLine("> "));
+        assertEquals("build folder/job ", editor.readLine("> "));
+        assertEquals("x", editor.readLine("> "));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\u0007"));
+    }
+
+    @Test
+    void listsAmbiguousCompletions() throws Exception {
+        LineEditor editor = editor("build\t\r", true);
+        assertEquals("build", editor.readLine("> "));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("\r\nbuild  buildy\r\n> build"));
+    }
+
+    @Test
+    void commonPrefix() {
+        assertEquals("bui", LineEditor.commonPrefix(List.of("build", "buildy", "bui")));
+        assertEquals("", LineEditor.commonPrefix(List.of("a", "b")));
+    }
+}
@@ -0,0 +1,108 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import jenkins.model.Jenkins;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class NonBlockingCommandTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void echoesInputAsUser() throws Exception {
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        KeyPair keyPair = TestKeys.register(User.getById("alice", true));
+
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.addPublicKeyIdentity(keyPair);
+                session.auth().verify(10, TimeUnit.SECONDS);
+                try (ChannelExec channel = session.createExecChannel("async-echo")) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    channel.setIn(new ByteArrayInputStream("hello\nworld\n".getBytes(Charset.defaultCharset())));
+                    channel.setOut(out);
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(10, TimeUnit.SECONDS);
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    assertEquals("alice: HELLO\nWORLD\n", out.toString(Charset.defaultCharset()));
+                    assertEquals(0, channel.getExitStatus());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads all input, then writes it back upper-cased after the name of the user running the command.
+     */
+    @TestExtension("echoesInputAsUser")
+    public static class AsyncEcho extends SshCommandFactory {
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("async-echo");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return new NonBlockingCommand(commandLine) {
+                private final ByteArrayOutputStream input = new ByteArrayOutputStream();
+
+                @Override
+                protected CompletionStage<Integer> runCommand() {
+                    return readAll()
+                            .thenCompose(v -> supplyBlocking(() -> Jenkins.getAuthentication2().getName()))
+                            .thenCompose(name -> write(name + ": " + input.toString(Charset.defaultCharset()).toUpperCase(Locale.ROOT)))
+                            .thenApply(v -> 0);
+                }
+
+                private CompletionStage<Void> readAll() {
+                    return read().thenCompose(bytes -> {
+                        if (bytes == null) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        input.writeBytes(bytes);
+                        return readAll();
+                    });
+                }
+            };
+        }
+    }
+}
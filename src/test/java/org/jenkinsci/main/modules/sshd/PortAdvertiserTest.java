@@ -0,0 +1,66 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.model.JenkinsLocationConfiguration;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.htmlunit.WebResponse;
+import org.jenkinsci.main.modules.instance_identity.InstanceIdentity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@WithJenkins
+class PortAdvertiserTest {
+
+    private static final String ADVERTISE_HOST_KEY = PortAdvertiser.class.getName() + ".advertiseHostKey";
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ADVERTISE_HOST_KEY);
+    }
+
+    @Test
+    void followsPortAndUrl() throws Exception {
+        SSHD server = SSHD.get();
+        assertNull(headers().getResponseHeaderValue("X-SSH-Endpoint"));
+
+        server.setPort(0);
+        server.start();
+        assertEquals("localhost:" + server.getActualPort(), headers().getResponseHeaderValue("X-SSH-Endpoint"));
+
+        JenkinsLocationConfiguration.get().setUrl(r.getURL().toString().replace("localhost", "127.0.0.1"));
+        assertEquals("127.0.0.1:" + server.getActualPort(), headers().getResponseHeaderValue("X-SSH-Endpoint"));
+
+        server.stop();
+        assertNull(headers().getResponseHeaderValue("X-SSH-Endpoint"));
+    }
+
+    @Test
+    void advertisesHostKeyOnRequest() throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        assertNull(headers().getResponseHeaderValue("X-SSH-Host-Key-Fingerprint"));
+
+        System.setProperty(ADVERTISE_HOST_KEY, "true");
+        PortAdvertiser.invalidate();
+        assertEquals(KeyUtils.getFingerPrint(InstanceIdentity.get().getPublic()),
+                headers().getResponseHeaderValue("X-SSH-Host-Key-Fingerprint"));
+        server.stop();
+    }
+
+    private WebResponse headers() throws Exception {
+        return r.createWebClient().goTo("").getWebResponse();
+    }
+}
@@ -0,0 +1,196 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyAgreement;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JCE providers on the algorithm families of the SSH transport: the ciphers and MACs
+ * {@link CryptoProviders} can pin, and the host key signatures and key agreements SSH Core runs once per connection.
+ * {@code default} is whichever provider the JVM prefers.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProviderBenchmark {
+
+    private static void registerBouncyCastle() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CipherState {
+        @Param({"aes128-gcm@openssh.com", "aes256-gcm@openssh.com", "aes128-ctr", "aes256-ctr"})
+        public String name;
+
+        @Param({"SunJCE", "BC"})
+        public String provider;
+
+        Cipher cipher;
+        byte[] packet;
+
+        @Setup
+        public void setup() throws Exception {
+            registerBouncyCastle();
+            NamedFactory<Cipher> factory = CryptoProviders.cipherProviders(BuiltinCiphers.fromFactoryName(name)).get(provider);
+            cipher = factory.create();
+            cipher.init(Cipher.Mode.Encrypt, random(cipher.getKdfSize()), random(cipher.getIVSize()));
+            packet = new byte[4 + AlgorithmThroughput.PACKET_SIZE + cipher.getAuthenticationTagSize()];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MacState {
+        @Param({"hmac-sha2-256-etm@openssh.com", "hmac-sha2-512-etm@openssh.com"})
+        public String name;
+
+        @Param({"SunJCE", "BC"})
+        public String provider;
+
+        Mac mac;
+        byte[] packet;
+        byte[] tag;
+
+        @Setup
+        public void setup() throws Exception {
+            registerBouncyCastle();
+            mac = CryptoProviders.macProviders(BuiltinMacs.fromFactoryName(name)).get(provider).create();
+            mac.init(random(mac.getDefaultBlockSize()));
+            packet = new byte[4 + AlgorithmThroughput.PACKET_SIZE];
+            tag = new byte[mac.getDefaultBlockSize()];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SignatureState {
+        @Param({"rsa", "ecdsa", "ed25519"})
+        public String type;
+
+        @Param({"default", "BC"})
+        public String provider;
+
+        Signature signature;
+        final byte[] exchangeHash = new byte[32];
+
+        @Setup
+        public void setup() throws Exception {
+            registerBouncyCastle();
+            KeyPairGenerator generator;
+            switch (type) {
+                case "rsa":
+                    generator = keyPairGenerator("RSA");
+                    generator.initialize(2048);
+                    signature = signature("SHA256withRSA");
+                    break;
+                case "ecdsa":
+                    generator = keyPairGenerator("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    signature = signature("SHA256withECDSA");
+                    break;
+                default:
+                    generator = keyPairGenerator("Ed25519");
+                    signature = signature("Ed25519");
+            }
+            signature.initSign(generator.generateKeyPair().getPrivate());
+            ThreadLocalRandom.current().nextBytes(exchangeHash);
+        }
+
+        private KeyPairGenerator keyPairGenerator(String algorithm) throws Exception {
+            return "default".equals(provider) ? KeyPairGenerator.getInstance(algorithm) : KeyPairGenerator.getInstance(algorithm, provider);
+        }
+
+        private Signature signature(String algorithm) throws Exception {
+            return "default".equals(provider) ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, provider);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class KeyAgreementState {
+        @Param({"X25519", "ECDH"})
+        public String algorithm;
+
+        @Param({"default", "BC"})
+        public String provider;
+
+        KeyAgreement agreement;
+        KeyPair ours;
+        KeyPair theirs;
+
+        @Setup
+        public void setup() throws Exception {
+            registerBouncyCastle();
+            boolean byDefault = "default".equals(provider);
+            String keyAlgorithm = "ECDH".equals(algorithm) ? "EC" : algorithm;
+            KeyPairGenerator generator = byDefault ? KeyPairGenerator.getInstance(keyAlgorithm) : KeyPairGenerator.getInstance(keyAlgorithm, provider);
+            if ("ECDH".equals(algorithm)) {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            }
+            ours = generator.generateKeyPair();
+            theirs = generator.generateKeyPair();
+            agreement = byDefault ? KeyAgreement.getInstance(algorithm) : KeyAgreement.getInstance(algorithm, provider);
+        }
+    }
+
+    @Benchmark
+    public byte[] encrypt(CipherState state) throws Exception {
+        if (state.cipher.getAuthenticationTagSize() > 0) {
+            state.cipher.updateWithAAD(state.packet, 0, 4, AlgorithmThroughput.PACKET_SIZE);
+        } else {
+            state.cipher.update(state.packet, 4, AlgorithmThroughput.PACKET_SIZE);
+        }
+        return state.packet;
+    }
+
+    @Benchmark
+    public byte[] authenticate(MacState state) throws Exception {
+        state.mac.update(state.packet, 0, state.packet.length);
+        state.mac.doFinal(state.tag, 0);
+        return state.tag;
+    }
+
+    @Benchmark
+    public byte[] sign(SignatureState state) throws Exception {
+        state.signature.update(state.exchangeHash);
+        return state.signature.sign();
+    }
+
+    @Benchmark
+    public byte[] agree(KeyAgreementState state) throws Exception {
+        state.agreement.init(state.ours.getPrivate());
+        state.agreement.doPhase(state.theirs.getPublic(), true);
+        return state.agreement.generateSecret();
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
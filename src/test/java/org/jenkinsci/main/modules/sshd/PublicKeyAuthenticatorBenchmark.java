@@ -0,0 +1,72 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import hudson.security.HudsonPrivateSecurityRealm;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.main.modules.cli.auth.ssh.UserPropertyImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PublicKeyAuthenticatorImpl} for a user with a varying number of registered keys.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PublicKeyAuthenticatorBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        @Param({"1", "10", "20"})
+        public int keyCount;
+
+        final PublicKeyAuthenticatorImpl authenticator = new PublicKeyAuthenticatorImpl();
+        PublicKey registeredKey;
+        PublicKey unknownKey;
+
+        @Override
+        public void setup() throws Exception {
+            HudsonPrivateSecurityRealm realm = new HudsonPrivateSecurityRealm(false, false, null);
+            getJenkins().setSecurityRealm(realm);
+            User user = realm.createAccount("bench", "bench");
+
+            StringBuilder authorizedKeys = new StringBuilder();
+            for (int i = 0; i < keyCount; i++) {
+                // the matching key comes last, which is the worst case for a linear scan
+                registeredKey = TestKeys.generateRsa().getPublic();
+                authorizedKeys.append(TestKeys.authorizedKey(registeredKey)).append('\n');
+            }
+            user.addProperty(new UserPropertyImpl(authorizedKeys.toString()));
+            unknownKey = TestKeys.generateRsa().getPublic();
+            if (!authenticator.authenticate("bench", registeredKey, null)) {
+                throw new IllegalStateException("The registered key does not authenticate");
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean authenticateRegisteredKey(JenkinsState state) {
+        return state.authenticator.authenticate("bench", state.registeredKey, null)
+                && PublicKeyAuthenticatorImpl.authorize("bench") != null;
+    }
+
+    @Benchmark
+    public boolean authenticateUnknownKey(JenkinsState state) {
+        return state.authenticator.authenticate("bench", state.unknownKey, null);
+    }
+
+    @Benchmark
+    public boolean authenticateUnknownUser(JenkinsState state) {
+        return state.authenticator.authenticate("nobody", state.registeredKey, null);
+    }
+}
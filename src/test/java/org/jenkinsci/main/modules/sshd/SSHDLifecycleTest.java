@@ -0,0 +1,213 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class SSHDLifecycleTest {
+
+    private static final String EXCLUDED_MACS = SSHD.class.getName() + ".excludedMacs";
+
+    private static CountDownLatch running;
+    private static CountDownLatch release;
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+        running = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        System.clearProperty(EXCLUDED_MACS);
+    }
+
+    @Test
+    void stopLetsRunningCommandsComplete() throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        int port = server.getActualPort();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(port))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.auth().verify(10, TimeUnit.SECONDS);
+                try (ChannelExec channel = session.createExecChannel("wait-for-release")) {
+                    channel.setOut(new ByteArrayOutputStream());
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(10, TimeUnit.SECONDS);
+                    assertTrue(running.await(10, TimeUnit.SECONDS));
+
+                    CompletableFuture<Void> stopped = CompletableFuture.runAsync(() -> {
+                        try {
+                            server.stop();
+                        } catch (Exception e) {
+                            throw new AssertionError(e);
+                        }
+                    });
+                    Thread.sleep(500);
+                    assertFalse(stopped.isDone(), "waits for the running command");
+                    // readers do not wait for the lifecycle transition in progress
+                    assertEquals(0, assertTimeoutPreemptively(Duration.ofSeconds(5), server::getActualPort));
+                    assertThrows(Exception.class,
+                            () -> client.connect("alice", new InetSocketAddress(port)).verify(5, TimeUnit.SECONDS));
+
+                    release.countDown();
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    assertEquals(0, channel.getExitStatus());
+                    stopped.get(30, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reconfigureAppliesWithoutRestart() throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        int port = server.getActualPort();
+        ObjectName serverName = new ObjectName("org.jenkinsci.main.modules.sshd:type=SSHD");
+        assertTrue(macs(serverName).contains("hmac-sha2-256"));
+
+        System.setProperty(EXCLUDED_MACS, "hmac-sha2-256");
+        server.reconfigure();
+        assertFalse(macs(serverName).contains("hmac-sha2-256"));
+        assertEquals(port, server.getActualPort());
+        server.stop();
+    }
+
+    @Test
+    void algorithmPreferencesApplyInOrder() throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        ObjectName serverName = new ObjectName("org.jenkinsci.main.modules.sshd:type=SSHD");
+
+        server.setCiphers("aes256-ctr, no-such-cipher, aes128-gcm@openssh.com");
+        server.setMacs("hmac-sha2-512-etm@openssh.com, hmac-sha2-256");
+        assertEquals(List.of("aes256-ctr", "aes128-gcm@openssh.com"), algorithms(serverName, "Ciphers"));
+        assertEquals(List.of("hmac-sha2-512-etm@openssh.com", "hmac-sha2-256"), macs(serverName));
+
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.auth().verify(10, TimeUnit.SECONDS);
+            }
+        }
+
+        server.setCiphers("no-such-cipher");
+        assertEquals(SSHD.getActivatedCiphers().size(), algorithms(serverName, "Ciphers").size());
+        server.stop();
+    }
+
+    @Test
+    void concurrentRestartsRebindOnce() throws Exception {
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        SshServer first = server.getServer();
+
+        ExecutorService requesters = Executors.newFixedThreadPool(4);
+        try {
+            // holding the lock keeps the scheduled restart from beginning while the requests come in
+            synchronized (server.lifecycle) {
+                List<Future<?>> requests = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    requests.add(requesters.submit(server::scheduleRestart));
+                }
+                for (Future<?> request : requests) {
+                    request.get(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            requesters.shutdown();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (server.getServer() == first && System.nanoTime() - deadline < 0) {
+            Thread.sleep(50);
+        }
+        SshServer second = server.getServer();
+        assertNotSame(first, second, "restarted");
+        assertNotNull(second);
+        Thread.sleep(1000);
+        assertSame(second, server.getServer(), "restarted only once");
+        server.stop();
+    }
+
+    private static List<String> macs(ObjectName serverName) throws Exception {
+        return algorithms(serverName, "Macs");
+    }
+
+    private static List<String> algorithms(ObjectName serverName, String attribute) throws Exception {
+        return Arrays.asList((String[]) ManagementFactory.getPlatformMBeanServer().getAttribute(serverName, attribute));
+    }
+
+    @TestExtension("stopLetsRunningCommandsComplete")
+    public static class WaitForRelease extends SshCommandFactory {
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("wait-for-release");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return new AsynchronousCommand(commandLine) {
+                @Override
+                protected int runCommand() throws Exception {
+                    running.countDown();
+                    return release.await(30, TimeUnit.SECONDS) ? 0 : 1;
+                }
+            };
+        }
+    }
+}
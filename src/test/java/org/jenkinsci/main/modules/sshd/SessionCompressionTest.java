@@ -0,0 +1,134 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.compression.BuiltinCompressions;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class SessionCompressionTest {
+
+    private static final String ENABLED = SessionCompression.class.getName() + ".enabled";
+    private static final String EXCLUDED = SessionCompression.class.getName() + ".excluded";
+    private static final int OUTPUT_SIZE = 256 * 1024;
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(ENABLED);
+        System.clearProperty(EXCLUDED);
+    }
+
+    @Test
+    void excludesLocalRangesByDefault() {
+        SessionCompression compression = new SessionCompression(6, SessionCompression.parseRanges(SessionCompression.DEFAULT_EXCLUDED));
+        assertTrue(compression.isExcluded(new InetSocketAddress("127.0.0.1", 22)));
+        assertTrue(compression.isExcluded(new InetSocketAddress("::1", 22)));
+        assertTrue(compression.isExcluded(new InetSocketAddress("192.168.10.20", 22)));
+        assertTrue(compression.isExcluded(new InetSocketAddress("172.31.0.1", 22)));
+        assertFalse(compression.isExcluded(new InetSocketAddress("172.32.0.1", 22)));
+        assertFalse(compression.isExcluded(new InetSocketAddress("203.0.113.7", 22)));
+        assertEquals(1, SessionCompression.parseRanges("10.0.0.0/8, example.com, ").size());
+    }
+
+    @Test
+    void compressesAndReportsPerSession() throws Exception {
+        System.setProperty(ENABLED, "true");
+        System.setProperty(EXCLUDED, "");
+        assertTrue(compressionRatio() > 10);
+    }
+
+    @Test
+    void leavesExcludedClientsUncompressed() throws Exception {
+        System.setProperty(ENABLED, "true");
+        assertEquals(0.0, compressionRatio());
+    }
+
+    /**
+     * Runs a command with highly compressible output, and returns the compression ratio of its session.
+     */
+    private double compressionRatio() throws Exception {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.setCompressionFactories(List.of(BuiltinCompressions.delayedZlib, BuiltinCompressions.none));
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress("127.0.0.1", server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.auth().verify(10, TimeUnit.SECONDS);
+                try (ChannelExec channel = session.createExecChannel("repeat")) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    channel.setOut(out);
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(10, TimeUnit.SECONDS);
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    assertEquals(OUTPUT_SIZE, out.size());
+                }
+                Set<ObjectName> names = mbeans.queryNames(new ObjectName("org.jenkinsci.main.modules.sshd:type=Session,*"), null);
+                assertEquals(1, names.size());
+                return (Double) mbeans.getAttribute(names.iterator().next(), "CompressionRatio");
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @TestExtension
+    public static class Repeat extends SshCommandFactory {
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("repeat");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return new AsynchronousCommand(commandLine) {
+                @Override
+                protected int runCommand() throws Exception {
+                    byte[] line = "the same line over and over again\n".getBytes(StandardCharsets.US_ASCII);
+                    for (int written = 0; written < OUTPUT_SIZE; written += line.length) {
+                        getOutputStream().write(line, 0, Math.min(line.length, OUTPUT_SIZE - written));
+                    }
+                    getOutputStream().flush();
+                    return 0;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class SessionIdentityTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void channelsShareIdentityUntilUserIsDeleted() throws Exception {
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        User alice = User.getById("alice", true);
+        KeyPair keyPair = TestKeys.register(alice);
+
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.addPublicKeyIdentity(keyPair);
+                session.auth().verify(10, TimeUnit.SECONDS);
+
+                for (int i = 0; i < 2; i++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    assertEquals(0, exec(session, "who-am-i", out));
+                    assertTrue(out.toString(Charset.defaultCharset()).contains("Authenticated as: alice"));
+                }
+
+                alice.delete();
+                ByteArrayOutputStream err = new ByteArrayOutputStream();
+                assertEquals(255, exec(session, "who-am-i", err));
+                assertTrue(err.toString(Charset.defaultCharset()).contains("no longer"), err.toString(Charset.defaultCharset()));
+            }
+        }
+    }
+
+    /**
+     * Runs a command, sending both its output and errors to the given stream.
+     */
+    private static int exec(ClientSession session, String command, ByteArrayOutputStream out) throws Exception {
+        try (ChannelExec channel = session.createExecChannel(command)) {
+            channel.setOut(out);
+            channel.setErr(out);
+            channel.open().verify(10, TimeUnit.SECONDS);
+            channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+            return channel.getExitStatus();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import hudson.security.AbstractPasswordBasedSecurityRealm;
+import hudson.security.GroupDetails;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an SSH login followed by a command against a {@link hudson.security.SecurityRealm}
+ * that takes a few milliseconds per lookup, like a remote directory would,
+ * with and without {@link UserDetailsCache}.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SlowRealmAuthenticationBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        @Param({"false", "true"})
+        public boolean cached;
+
+        final PublicKeyAuthenticatorImpl authenticator = new PublicKeyAuthenticatorImpl();
+        User user;
+        PublicKey key;
+
+        @Override
+        public void setup() throws Exception {
+            getJenkins().setSecurityRealm(new SlowRealm());
+            user = User.getById("bench", true);
+            key = TestKeys.register(user).getPublic();
+            if (!authenticator.authenticate("bench", key, null)) {
+                throw new IllegalStateException("The registered key does not authenticate");
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void forget() {
+            if (!cached) {
+                UserDetailsCache.get().invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * What a typical client causes: the key is offered, then signed, then a command runs as the user.
+     */
+    @Benchmark
+    public Object loginAndRunCommand(JenkinsState state) {
+        state.authenticator.authenticate("bench", state.key, null);
+        state.authenticator.authenticate("bench", state.key, null);
+        PublicKeyAuthenticatorImpl.authorize("bench");
+        return UserDetailsCache.get().impersonate(state.user);
+    }
+
+    static class SlowRealm extends AbstractPasswordBasedSecurityRealm {
+        static final long LATENCY_MILLIS = 2;
+
+        @Override
+        protected UserDetails authenticate2(String username, String password) throws AuthenticationException {
+            return loadUserByUsername2(username);
+        }
+
+        @Override
+        public UserDetails loadUserByUsername2(String username) throws UsernameNotFoundException {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new org.springframework.security.core.userdetails.User(username, "", true, true, true, true, List.of());
+        }
+
+        @Override
+        public GroupDetails loadGroupByGroupname2(String groupname, boolean fetchMembers) throws UsernameNotFoundException {
+            throw new UsernameNotFoundException(groupname);
+        }
+    }
+}
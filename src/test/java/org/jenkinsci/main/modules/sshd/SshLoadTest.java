@@ -0,0 +1,217 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import net.sf.json.JSONObject;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.command.Command;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures how many SSH sessions and commands the server sustains.
+ *
+ * <p>
+ * Concurrent clients repeatedly connect, authenticate with a public key, and run a trivial command,
+ * and the latency of each phase is reported separately.
+ * Skipped during regular builds; run it with {@code mvn test -Dloadtest -Dtest=SshLoadTest}.
+ * The following system properties configure it:
+ * <ul>
+ * <li>{@code loadtest.clients}: number of concurrent clients (default: 16),
+ * <li>{@code loadtest.commandsPerSession}: commands run by each session (default: 1),
+ * <li>{@code loadtest.warmupSeconds}: duration not measured at the start (default: 5),
+ * <li>{@code loadtest.durationSeconds}: duration measured after that (default: 30),
+ * <li>{@code loadtest.report}: where to write the results as JSON (default: {@code loadtest-report.json}).
+ * </ul>
+ */
+@WithJenkins
+@EnabledIfSystemProperty(named = "loadtest", matches = ".*")
+class SshLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 16);
+    private static final int COMMANDS_PER_SESSION = Integer.getInteger("loadtest.commandsPerSession", 1);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmupSeconds", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.durationSeconds", 30);
+    private static final String REPORT = System.getProperty("loadtest.report", "loadtest-report.json");
+
+    @Test
+    void load(JenkinsRule r) throws Exception {
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        KeyPair keyPair = TestKeys.register(User.getById("load", true));
+
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        int port = server.getActualPort();
+
+        Samples handshake = new Samples();
+        Samples auth = new Samples();
+        Samples command = new Samples();
+        AtomicLong authFailures = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.execute(() -> {
+                    while (System.nanoTime() - end < 0) {
+                        try {
+                            runSession(client, port, keyPair, System.nanoTime() - measureFrom >= 0,
+                                    handshake, auth, command, authFailures);
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            LOGGER.log(Level.FINE, "Load test session failed", e);
+                        }
+                    }
+                });
+            }
+            clients.shutdown();
+            assertTrue(clients.awaitTermination(WARMUP_SECONDS + DURATION_SECONDS + 60, TimeUnit.SECONDS));
+        }
+        server.stop();
+
+        JSONObject report = new JSONObject()
+                .element("clients", CLIENTS)
+                .element("commandsPerSession", COMMANDS_PER_SESSION)
+                .element("durationSeconds", DURATION_SECONDS)
+                .element("sessionsPerSecond", (double) auth.count() / DURATION_SECONDS)
+                .element("commandsPerSecond", (double) command.count() / DURATION_SECONDS)
+                .element("authFailures", authFailures.get())
+                .element("errors", errors.get())
+                .element("handshake", handshake.toJson())
+                .element("auth", auth.toJson())
+                .element("command", command.toJson());
+        Files.writeString(new File(REPORT).toPath(), report.toString(2), StandardCharsets.UTF_8);
+        LOGGER.log(Level.INFO, "SSH load test results written to {0}:\n{1}", new Object[] {REPORT, report.toString(2)});
+        // a run where sessions do not authenticate measures rejections, not logins
+        assertEquals(0L, authFailures.get(), "authentication failures");
+        assertTrue(auth.count() > 0, "no session authenticated");
+    }
+
+    private static void runSession(SshClient client, int port, KeyPair keyPair, boolean measured,
+                                   Samples handshake, Samples auth, Samples command, AtomicLong authFailures) throws Exception {
+        long t0 = System.nanoTime();
+        try (ClientSession session = client.connect("load", new InetSocketAddress(port))
+                .verify(30, TimeUnit.SECONDS).getSession()) {
+            // the key exchange is complete once the session waits for authentication
+            session.waitFor(EnumSet.of(ClientSession.ClientSessionEvent.WAIT_AUTH), TimeUnit.SECONDS.toMillis(30));
+            long t1 = System.nanoTime();
+            session.addPublicKeyIdentity(keyPair);
+            try {
+                session.auth().verify(30, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                authFailures.incrementAndGet();
+                LOGGER.log(Level.FINE, "Load test session did not authenticate", e);
+                return;
+            }
+            long t2 = System.nanoTime();
+            if (measured) {
+                handshake.add(t1 - t0);
+                auth.add(t2 - t1);
+            }
+            for (int i = 0; i < COMMANDS_PER_SESSION; i++) {
+                long t3 = System.nanoTime();
+                try (ChannelExec channel = session.createExecChannel("load-noop")) {
+                    channel.setOut(new ByteArrayOutputStream());
+                    channel.setErr(new ByteArrayOutputStream());
+                    channel.open().verify(30, TimeUnit.SECONDS);
+                    channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED), TimeUnit.SECONDS.toMillis(30));
+                    if (!Integer.valueOf(0).equals(channel.getExitStatus())) {
+                        throw new IllegalStateException("load-noop exited with " + channel.getExitStatus());
+                    }
+                }
+                if (measured) {
+                    command.add(System.nanoTime() - t3);
+                }
+            }
+        }
+    }
+
+    /**
+     * Latencies of one phase, kept in full so that percentiles are exact.
+     */
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int count;
+
+        synchronized void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        synchronized JSONObject toJson() {
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return new JSONObject()
+                    .element("count", count)
+                    .element("p50Millis", percentileMillis(sorted, 0.5))
+                    .element("p99Millis", percentileMillis(sorted, 0.99))
+                    .element("p999Millis", percentileMillis(sorted, 0.999))
+                    .element("maxMillis", count == 0 ? 0 : sorted[count - 1] / 1e6);
+        }
+
+        private static double percentileMillis(long[] sorted, double q) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    @TestExtension("load")
+    public static class Noop extends SshCommandFactory {
+        @Override
+        public Set<String> getCommandNames() {
+            return Set.of("load-noop");
+        }
+
+        @Override
+        public Command create(CommandLine commandLine) {
+            return new AsynchronousCommand(commandLine) {
+                @Override
+                protected int runCommand() {
+                    return 0;
+                }
+            };
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SshLoadTest.class.getName());
+}
@@ -0,0 +1,68 @@
+package org.jenkinsci.main.modules.sshd;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+@DisabledOnOs(value = OS.WINDOWS)
+class SshdJmxTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void beansFollowServerAndSessions() throws Exception {
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        ObjectName serverName = new ObjectName("org.jenkinsci.main.modules.sshd:type=SSHD");
+        ObjectName sessionPattern = new ObjectName("org.jenkinsci.main.modules.sshd:type=Session,*");
+
+        SSHD server = SSHD.get();
+        server.setPort(0);
+        server.start();
+        assertEquals(server.getActualPort(), mbeans.getAttribute(serverName, "Port"));
+        assertEquals(true, mbeans.getAttribute(serverName, "Running"));
+
+        try (SshClient client = SshClient.setUpDefaultClient()) {
+            client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+            client.start();
+            try (ClientSession session = client.connect("alice", new InetSocketAddress(server.getActualPort()))
+                    .verify(10, TimeUnit.SECONDS).getSession()) {
+                session.auth().verify(10, TimeUnit.SECONDS);
+                Set<ObjectName> names = mbeans.queryNames(sessionPattern, null);
+                assertEquals(1, names.size());
+                ObjectName sessionName = names.iterator().next();
+                assertTrue(((Long) mbeans.getAttribute(sessionName, "AgeMillis")) >= 0);
+
+                mbeans.invoke(sessionName, "close", new Object[0], new String[0]);
+                session.waitFor(Set.of(ClientSession.ClientSessionEvent.CLOSED), TimeUnit.SECONDS.toMillis(10));
+                assertTrue(session.isClosed() || session.isClosing());
+            }
+        }
+
+        server.stop();
+        assertFalse(mbeans.isRegistered(serverName));
+        assertTrue(mbeans.queryNames(sessionPattern, null).isEmpty());
+    }
+}
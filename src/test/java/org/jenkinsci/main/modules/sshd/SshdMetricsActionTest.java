@@ -0,0 +1,53 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.htmlunit.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockAuthorizationStrategy;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class SshdMetricsActionTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void json() throws Exception {
+        SshdMetrics.get().commandCompleted("who-am-i", 1_000_000);
+        JenkinsRule.JSONWebResponse rsp = r.getJSON("sshd/metrics");
+        JSONObject json = rsp.getJSONObject();
+        assertTrue(json.getJSONObject("sessions").has("active"));
+        assertTrue(json.getJSONObject("commandLatency").getJSONObject("who-am-i").getLong("count") >= 1);
+    }
+
+    @Test
+    void prometheus() throws Exception {
+        SshdMetrics.get().commandCompleted("who-am-i", 1_000_000);
+        Page page = r.createWebClient().goTo("sshd/metrics?format=prometheus", "text/plain");
+        String text = page.getWebResponse().getContentAsString();
+        assertTrue(text.contains("# TYPE jenkins_sshd_sessions_active gauge"), text);
+        assertTrue(text.contains("jenkins_sshd_command_seconds_bucket{command=\"who-am-i\",le=\"+Inf\"}"), text);
+    }
+
+    @Test
+    void requiresSystemRead() throws Exception {
+        r.jenkins.setSecurityRealm(r.createDummySecurityRealm());
+        r.jenkins.setAuthorizationStrategy(new MockAuthorizationStrategy()
+                .grant(Jenkins.READ).everywhere().to("bob")
+                .grant(Jenkins.ADMINISTER).everywhere().to("admin"));
+        JenkinsRule.WebClient wc = r.createWebClient().withThrowExceptionOnFailingStatusCode(false);
+        assertEquals(403, wc.login("bob").goTo("sshd/metrics", null).getWebResponse().getStatusCode());
+        assertEquals(200, r.createWebClient().login("admin").goTo("sshd/metrics", null).getWebResponse().getStatusCode());
+    }
+}
@@ -0,0 +1,41 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.jenkinsci.main.modules.cli.auth.ssh.UserPropertyImpl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+/**
+ * Key pairs for tests and benchmarks, registered the way users paste them from {@code ~/.ssh/id_rsa.pub}.
+ */
+public final class TestKeys {
+    private TestKeys() {
+    }
+
+    public static KeyPair generateRsa() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * The key as an {@code authorized_keys} line, e.g. {@code ssh-rsa AAAA...}.
+     */
+    public static String authorizedKey(PublicKey key) {
+        return PublicKeyEntry.toString(key);
+    }
+
+    /**
+     * Generates a key pair and registers its public key as the only one of the given user.
+     */
+    public static KeyPair register(User user) throws GeneralSecurityException, IOException {
+        KeyPair keyPair = generateRsa();
+        user.addProperty(new UserPropertyImpl(authorizedKey(keyPair.getPublic())));
+        return keyPair;
+    }
+}
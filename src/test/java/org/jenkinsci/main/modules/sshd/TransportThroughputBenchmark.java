@@ -0,0 +1,89 @@
+package org.jenkinsci.main.modules.sshd;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.apache.sshd.common.cipher.BuiltinCiphers;
+import org.apache.sshd.common.cipher.Cipher;
+import org.apache.sshd.common.mac.BuiltinMacs;
+import org.apache.sshd.common.mac.Mac;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the SSH transport takes to encrypt, or authenticate, a maximum size packet,
+ * for the ciphers and MACs {@link SSHD} can be configured with.
+ */
+@JmhBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransportThroughputBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CipherState {
+        @Param({"aes128-gcm@openssh.com", "aes256-gcm@openssh.com", "chacha20-poly1305@openssh.com", "aes128-ctr", "aes256-ctr"})
+        public String name;
+
+        Cipher cipher;
+        byte[] packet;
+
+        @Setup
+        public void setup() throws Exception {
+            cipher = BuiltinCiphers.fromFactoryName(name).create();
+            cipher.init(Cipher.Mode.Encrypt, random(cipher.getKdfSize()), random(cipher.getIVSize()));
+            packet = new byte[4 + AlgorithmThroughput.PACKET_SIZE + cipher.getAuthenticationTagSize()];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class MacState {
+        @Param({"hmac-sha2-256-etm@openssh.com", "hmac-sha2-512-etm@openssh.com", "hmac-sha2-256", "hmac-sha1"})
+        public String name;
+
+        Mac mac;
+        byte[] packet;
+        byte[] tag;
+
+        @Setup
+        public void setup() throws Exception {
+            mac = BuiltinMacs.fromFactoryName(name).create();
+            mac.init(random(mac.getDefaultBlockSize()));
+            packet = new byte[4 + AlgorithmThroughput.PACKET_SIZE];
+            tag = new byte[mac.getDefaultBlockSize()];
+        }
+    }
+
+    @Benchmark
+    public byte[] encrypt(CipherState state) throws Exception {
+        if (state.cipher.getAuthenticationTagSize() > 0) {
+            state.cipher.updateWithAAD(state.packet, 0, 4, AlgorithmThroughput.PACKET_SIZE);
+        } else {
+            state.cipher.update(state.packet, 4, AlgorithmThroughput.PACKET_SIZE);
+        }
+        return state.packet;
+    }
+
+    @Benchmark
+    public byte[] authenticate(MacState state) throws Exception {
+        state.mac.update(state.packet, 0, state.packet.length);
+        state.mac.doFinal(state.tag, 0);
+        return state.tag;
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
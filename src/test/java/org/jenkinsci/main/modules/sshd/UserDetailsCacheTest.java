@@ -0,0 +1,86 @@
+package org.jenkinsci.main.modules.sshd;
+
+import hudson.model.User;
+import hudson.security.AbstractPasswordBasedSecurityRealm;
+import hudson.security.GroupDetails;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@WithJenkins
+class UserDetailsCacheTest {
+
+    private JenkinsRule r;
+
+    @BeforeEach
+    void setUp(JenkinsRule rule) {
+        r = rule;
+    }
+
+    @Test
+    void cachesUntilExpiryOrSave() throws Exception {
+        CountingRealm realm = new CountingRealm();
+        r.jenkins.setSecurityRealm(realm);
+        User alice = User.getById("alice", true);
+        AtomicLong clock = new AtomicLong();
+        UserDetailsCache cache = new UserDetailsCache(16, 100, clock::get);
+
+        UserDetails details = cache.getUserDetails(alice);
+        assertSame(details, cache.getUserDetails(alice));
+        assertEquals(1, realm.lookups.get());
+
+        clock.set(100);
+        cache.getUserDetails(alice);
+        assertEquals(2, realm.lookups.get());
+
+        cache.invalidate(User.idStrategy().keyFor("alice"));
+        cache.getUserDetails(alice);
+        assertEquals(3, realm.lookups.get());
+    }
+
+    @Test
+    void savingUserInvalidates() throws Exception {
+        CountingRealm realm = new CountingRealm();
+        r.jenkins.setSecurityRealm(realm);
+        User alice = User.getById("alice", true);
+        UserDetailsCache.get().getUserDetails(alice);
+        int lookups = realm.lookups.get();
+        UserDetailsCache.get().getUserDetails(alice);
+        assertEquals(lookups, realm.lookups.get());
+
+        alice.save();
+        UserDetailsCache.get().getUserDetails(alice);
+        assertEquals(lookups + 1, realm.lookups.get());
+    }
+
+    private static class CountingRealm extends AbstractPasswordBasedSecurityRealm {
+        final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        protected UserDetails authenticate2(String username, String password) throws AuthenticationException {
+            return loadUserByUsername2(username);
+        }
+
+        @Override
+        public UserDetails loadUserByUsername2(String username) throws UsernameNotFoundException {
+            lookups.incrementAndGet();
+            return new org.springframework.security.core.userdetails.User(username, "", true, true, true, true, List.of());
+        }
+
+        @Override
+        public GroupDetails loadGroupByGroupname2(String groupname, boolean fetchMembers) throws UsernameNotFoundException {
+            throw new UsernameNotFoundException(groupname);
+        }
+    }
+}